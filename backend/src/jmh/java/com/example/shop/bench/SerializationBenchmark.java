@@ -0,0 +1,135 @@
+package com.example.shop.bench;
+
+import com.example.shop.cart.CartItem;
+import com.example.shop.order.Order;
+import com.example.shop.product.Product;
+import com.example.shop.product.ProductSummary;
+import com.example.shop.user.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * JSON против CBOR на тех же DTO, что отдают ProductController, CartController и OrderController.
+ * Мапперы настроены как в приложении (билдер Spring + фильтр fields=).
+ * Размеры ответов печатаются при подготовке каждого набора: строка «# payload ...».
+ * <p>
+ * Запуск: {@code gradle jmh}, можно сузить: {@code gradle jmh -Pjmh.includes=SerializationBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    // summaries — сетка каталога, products — полные карточки, cart — корзина, orders — история заказов
+    @Param({"summaries", "products", "cart", "orders"})
+    public String payload;
+
+    @Param({"20", "1000"})
+    public int size;
+
+    private ObjectMapper json;
+    private ObjectMapper cbor;
+    private Object body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json = mapper().build();
+        cbor = mapper().factory(new CBORFactory()).build();
+        body = switch (payload) {
+            case "summaries" -> summaries(size);
+            case "products" -> products(size);
+            case "cart" -> cart(size);
+            case "orders" -> orders(size);
+            default -> throw new IllegalArgumentException(payload);
+        };
+
+        int jsonBytes = json.writeValueAsBytes(body).length;
+        int cborBytes = cbor.writeValueAsBytes(body).length;
+        System.out.printf("%n# payload %s x%d: json=%d B, cbor=%d B (%d%%)%n",
+                payload, size, jsonBytes, cborBytes, Math.round(100.0 * cborBytes / jsonBytes));
+    }
+
+    @Benchmark
+    public byte[] json() throws Exception {
+        return json.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws Exception {
+        return cbor.writeValueAsBytes(body);
+    }
+
+    private static Jackson2ObjectMapperBuilder mapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+    }
+
+    // ---------- данные, похожие на настоящие ----------
+
+    private static final Random RANDOM = new Random(42);
+
+    private static BigDecimal price() {
+        return BigDecimal.valueOf(50 + RANDOM.nextInt(500_000), 2);
+    }
+
+    private static Product product(long id) {
+        Product p = new Product();
+        p.setId(id);
+        p.setName("Магнит «Город» №" + id);
+        p.setDescription("Сувенирный магнит ручной работы, керамика, роспись. Размер 6×8 см. ".repeat(3));
+        p.setPrice(price());
+        p.setImageUrl("/uploads/products/" + id + ".jpg");
+        p.setStock(RANDOM.nextInt(200));
+        p.setCategory("Магниты");
+        return p;
+    }
+
+    private static List<ProductSummary> summaries(int n) {
+        List<ProductSummary> list = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            Product p = product(id);
+            list.add(new ProductSummary(p.getId(), p.getName(), p.getPrice(), p.getImageUrl(), p.getStock()));
+        }
+        return list;
+    }
+
+    private static List<Product> products(int n) {
+        List<Product> list = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            list.add(product(id));
+        }
+        return list;
+    }
+
+    private static List<CartItem> cart(int n) {
+        User user = new User(7L, "buyer@example.com", "hash", Set.of("ROLE_USER"));
+        List<CartItem> list = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            list.add(new CartItem(id, user, product(id), 1 + RANDOM.nextInt(5)));
+        }
+        return list;
+    }
+
+    private static List<Order> orders(int n) {
+        User user = new User(7L, "buyer@example.com", "$2a$10$abcdefghijklmnopqrstuv", Set.of("ROLE_USER"));
+        List<Order> list = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            Order order = new Order();
+            order.setId(id);
+            order.setUser(user);
+            order.setCreatedAt(Instant.parse("2026-01-01T10:00:00Z").plusSeconds(id * 3600));
+            order.setTotalPrice(price());
+            order.setStatus("NEW");
+            list.add(order);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.shop.analytics;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Аналитика продаж для админки. Все запросы читают только итоговые таблицы,
+ * поэтому время ответа зависит от периода, а не от размера истории заказов.
+ */
+@RestController
+@RequestMapping("/api/admin/analytics")
+@CrossOrigin(origins = "*", allowCredentials = "false")
+public class AdminAnalyticsController {
+
+    private static final int MAX_DAYS = 366;
+    private static final int MAX_PRODUCTS = 100;
+
+    private final JdbcTemplate jdbc;
+    private final SalesRollups rollups;
+
+    public AdminAnalyticsController(JdbcTemplate jdbc, SalesRollups rollups) {
+        this.jdbc = jdbc;
+        this.rollups = rollups;
+    }
+
+    /**
+     * Заказы, штуки и выручка по дням. По умолчанию — последние 30 дней.
+     */
+    @GetMapping("/daily")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> daily(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        LocalDate end = to != null ? to : LocalDate.now(rollups.getZone());
+        LocalDate start = from != null ? from : end.minusDays(29);
+        if (start.isAfter(end) || ChronoUnit.DAYS.between(start, end) >= MAX_DAYS) {
+            return ResponseEntity.badRequest().body("Период должен быть не длиннее " + MAX_DAYS + " дней");
+        }
+
+        List<SalesAnalytics.DailySales> rows = jdbc.query("""
+                        select day, sum(orders), sum(units), sum(revenue)
+                        from sales_daily
+                        where day between ? and ?
+                        group by day
+                        order by day
+                        """,
+                (rs, i) -> new SalesAnalytics.DailySales(
+                        rs.getObject(1, LocalDate.class), rs.getLong(2), rs.getLong(3), rs.getBigDecimal(4)),
+                start, end);
+        return ResponseEntity.ok(rows);
+    }
+
+    /**
+     * Товары с наибольшей выручкой за период.
+     */
+    @GetMapping("/products")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> products(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        LocalDate end = to != null ? to : LocalDate.now(rollups.getZone());
+        LocalDate start = from != null ? from : end.minusDays(29);
+        if (start.isAfter(end) || ChronoUnit.DAYS.between(start, end) >= MAX_DAYS) {
+            return ResponseEntity.badRequest().body("Период должен быть не длиннее " + MAX_DAYS + " дней");
+        }
+
+        List<SalesAnalytics.ProductSales> rows = jdbc.query("""
+                        select s.product_id, p.name, sum(s.orders), sum(s.units), sum(s.revenue) as revenue
+                        from sales_daily_product s
+                        left join products p on p.id = s.product_id
+                        where s.day between ? and ?
+                        group by s.product_id, p.name
+                        order by revenue desc
+                        limit ?
+                        """,
+                (rs, i) -> new SalesAnalytics.ProductSales(
+                        rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getLong(4), rs.getBigDecimal(5)),
+                start, end, Math.min(Math.max(limit, 1), MAX_PRODUCTS));
+        return ResponseEntity.ok(rows);
+    }
+
+    /**
+     * Пересчёт итогов из истории заказов (после включения функции или при расхождении).
+     */
+    @PostMapping("/backfill")
+    public ResponseEntity<?> backfill() {
+        return ResponseEntity.ok(Map.of("days", rollups.rebuild()));
+    }
+}
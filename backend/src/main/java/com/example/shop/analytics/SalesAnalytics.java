@@ -0,0 +1,17 @@
+package com.example.shop.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ответы аналитики продаж.
+ */
+public final class SalesAnalytics {
+
+    private SalesAnalytics() {
+    }
+
+    public record DailySales(LocalDate day, long orders, long units, BigDecimal revenue) { }
+
+    public record ProductSales(Long productId, String name, long orders, long units, BigDecimal revenue) { }
+}
@@ -0,0 +1,217 @@
+package com.example.shop.analytics;
+
+import com.example.shop.order.Order;
+import com.example.shop.order.OrderArchive;
+import com.example.shop.order.OrderArchiver;
+import com.example.shop.order.OrderItem;
+import com.example.shop.order.OrderPartitions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Итоги продаж по дням и по товарам, которые обновляются в транзакции оформления заказа.
+ * <p>
+ * Заказы пачки сначала складываются в памяти, затем в БД уходит одна строка на день
+ * и одна на пару «день, товар». Дневная строка выбирается из {@code shards} штук
+ * случайно, так что параллельные оформления почти не ждут друг друга.
+ * <p>
+ * Пересчёт идёт по дням. Оформление держит разделяемую advisory-блокировку своего дня,
+ * пересчёт — исключительную, так что ждут только заказы дня, который сейчас пересчитывается.
+ */
+@Component
+public class SalesRollups {
+
+    // Первый ключ pg_advisory_xact_lock(int, int), второй — номер дня
+    private static final int DAY_LOCK_SPACE = 0x53616c65;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final OrderArchive archive;
+    private final OrderPartitions partitions;
+    private final ZoneId zone;
+    private final int shards;
+
+    public SalesRollups(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            OrderArchive archive,
+            OrderPartitions partitions,
+            @Value("${app.analytics.zone:Europe/Moscow}") String zone,
+            @Value("${app.analytics.shards:8}") int shards
+    ) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.archive = archive;
+        this.partitions = partitions;
+        this.zone = ZoneId.of(zone);
+        this.shards = shards;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    private static final class Totals {
+        long orders;
+        long units;
+        BigDecimal revenue = BigDecimal.ZERO;
+    }
+
+    private record DayProduct(LocalDate day, Long productId) { }
+
+    private record OrderProduct(Order order, Long productId) { }
+
+    /**
+     * Учитывает новые заказы. Должен выполняться в той же транзакции, что и их сохранение.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Collection<Order> orders, Collection<OrderItem> items) {
+        Map<LocalDate, Totals> byDay = new TreeMap<>();
+        Map<DayProduct, Totals> byProduct = new HashMap<>();
+        Map<Order, LocalDate> days = new HashMap<>();
+
+        for (Order order : orders) {
+            LocalDate day = LocalDate.ofInstant(order.getCreatedAt(), zone);
+            days.put(order, day);
+            Totals t = byDay.computeIfAbsent(day, d -> new Totals());
+            t.orders++;
+            t.revenue = t.revenue.add(order.getTotalPrice());
+        }
+        Set<OrderProduct> seen = new HashSet<>();
+        for (OrderItem item : items) {
+            LocalDate day = days.get(item.getOrder());
+            byDay.get(day).units += item.getQuantity();
+
+            Totals t = byProduct.computeIfAbsent(new DayProduct(day, item.getProductId()), k -> new Totals());
+            // Один заказ считается по товару один раз, даже если товар в нём двумя строками
+            if (seen.add(new OrderProduct(item.getOrder(), item.getProductId()))) {
+                t.orders++;
+            }
+            t.units += item.getQuantity();
+            t.revenue = t.revenue.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+
+        // Дни по порядку: две транзакции не возьмут блокировки дней навстречу друг другу
+        byDay.keySet().forEach(day -> jdbc.queryForObject(
+                "select pg_advisory_xact_lock_shared(?, ?)::text", String.class, DAY_LOCK_SPACE, (int) day.toEpochDay()));
+
+        int shard = ThreadLocalRandom.current().nextInt(shards);
+        List<Object[]> dayRows = new ArrayList<>(byDay.size());
+        byDay.forEach((day, t) -> dayRows.add(new Object[]{day, shard, t.orders, t.units, t.revenue}));
+        jdbc.batchUpdate("""
+                insert into sales_daily (day, shard, orders, units, revenue) values (?, ?, ?, ?, ?)
+                on conflict (day, shard) do update set
+                    orders = sales_daily.orders + excluded.orders,
+                    units = sales_daily.units + excluded.units,
+                    revenue = sales_daily.revenue + excluded.revenue
+                """, dayRows);
+
+        // В порядке (день, товар), чтобы параллельные транзакции блокировали строки одинаково
+        List<Object[]> productRows = byProduct.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.comparing(DayProduct::day).thenComparing(DayProduct::productId)))
+                .map(e -> new Object[]{e.getKey().day(), e.getKey().productId(),
+                        e.getValue().orders, e.getValue().units, e.getValue().revenue})
+                .toList();
+        jdbc.batchUpdate("""
+                insert into sales_daily_product (day, product_id, orders, units, revenue) values (?, ?, ?, ?, ?)
+                on conflict (day, product_id) do update set
+                    orders = sales_daily_product.orders + excluded.orders,
+                    units = sales_daily_product.units + excluded.units,
+                    revenue = sales_daily_product.revenue + excluded.revenue
+                """, productRows);
+    }
+
+    /**
+     * Пересчитывает итоги из orders и order_items, по дню в транзакции. Заказы пересчитываемого дня
+     * на это время ждут: иначе заказ, оформленный посреди пересчёта, мог бы учесться дважды или потеряться.
+     * Дни, заказы которых уже частично или полностью ушли в архив, не пересчитываются:
+     * в orders их больше нет, итоги за них остаются как были.
+     *
+     * @return сколько дней пересчитано
+     */
+    public int rebuild() {
+        // Архив, выгруженный другим экземпляром, тоже должен быть учтён
+        archive.rescan();
+        Optional<YearMonth> oldest = partitions.attached().stream().findFirst();
+        LocalDate from = archive.archivedUntil()
+                .map(this::firstWholeDay)
+                .orElse(LocalDate.EPOCH);
+        LocalDate today = LocalDate.now(zone);
+        Timestamp first = jdbc.queryForObject("select min(created_at) from orders where created_at >= ?",
+                Timestamp.class, Timestamp.from(from.atStartOfDay(zone).toInstant()));
+        LocalDate firstOrderDay = first != null ? LocalDate.ofInstant(first.toInstant(), zone) : today.plusDays(1);
+
+        // Итоги за дни без заказов (например, после ручной чистки orders) просто удаляются
+        tx.executeWithoutResult(status -> {
+            jdbc.update("delete from sales_daily where day >= ? and day < ?", from, firstOrderDay);
+            jdbc.update("delete from sales_daily_product where day >= ? and day < ?", from, firstOrderDay);
+        });
+
+        int days = 0;
+        for (LocalDate day = firstOrderDay; !day.isAfter(today); day = day.plusDays(1)) {
+            LocalDate current = day;
+            if (Boolean.TRUE.equals(tx.execute(status -> rebuildDay(current, oldest)))) {
+                days++;
+            }
+        }
+        return days;
+    }
+
+    /**
+     * @param oldest самый старый месяц orders на начало пересчёта
+     * @return false, если заказы дня ушли в архив, пока шёл пересчёт
+     */
+    private boolean rebuildDay(LocalDate day, Optional<YearMonth> oldest) {
+        Instant dayStart = day.atStartOfDay(zone).toInstant();
+        // Пока держим, архиватор не выгрузит месяц посреди пересчёта дня
+        jdbc.queryForObject("select pg_advisory_xact_lock_shared(?)::text", String.class, OrderArchiver.LOCK_KEY);
+        Optional<YearMonth> now = partitions.attached().stream().findFirst();
+        if (!now.equals(oldest) && now.map(month -> OrderPartitions.start(month).isAfter(dayStart)).orElse(true)) {
+            return false;
+        }
+        // Ждём оформления этого дня, которые уже идут, и не пускаем новые до коммита
+        jdbc.queryForObject("select pg_advisory_xact_lock(?, ?)::text", String.class, DAY_LOCK_SPACE, (int) day.toEpochDay());
+        Timestamp start = Timestamp.from(dayStart);
+        Timestamp end = Timestamp.from(day.plusDays(1).atStartOfDay(zone).toInstant());
+        jdbc.update("delete from sales_daily where day = ?", day);
+        jdbc.update("delete from sales_daily_product where day = ?", day);
+        jdbc.update("""
+                insert into sales_daily (day, shard, orders, units, revenue)
+                select ?, 0, count(*),
+                       coalesce(sum((select sum(i.quantity) from order_items i where i.order_id = o.id)), 0),
+                       coalesce(sum(o.total_price), 0)
+                from orders o
+                where o.created_at >= ? and o.created_at < ?
+                having count(*) > 0
+                """, day, start, end);
+        jdbc.update("""
+                insert into sales_daily_product (day, product_id, orders, units, revenue)
+                select ?, i.product_id, count(distinct o.id), sum(i.quantity), sum(i.price * i.quantity)
+                from order_items i
+                join orders o on o.id = i.order_id
+                where o.created_at >= ? and o.created_at < ?
+                group by i.product_id
+                """, day, start, end);
+        return true;
+    }
+
+    // Граница архива — полночь UTC, а дни считаются в zone: день, который она режет, пропускаем
+    private LocalDate firstWholeDay(Instant boundary) {
+        LocalDate day = LocalDate.ofInstant(boundary, zone);
+        return day.atStartOfDay(zone).toInstant().equals(boundary) ? day : day.plusDays(1);
+    }
+}
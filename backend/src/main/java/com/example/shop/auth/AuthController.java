@@ -2,7 +2,10 @@ package com.example.shop.auth;
 
 import com.example.shop.user.User;
 import com.example.shop.user.UserRepository;
+import io.jsonwebtoken.Claims;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.*;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -19,17 +22,20 @@ public class AuthController {
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authManager;
     private final JwtService jwtService;
+    private final RefreshTokenService refreshTokens;
 
     public AuthController(
             UserRepository users,
             PasswordEncoder passwordEncoder,
             AuthenticationManager authManager,
-            JwtService jwtService
+            JwtService jwtService,
+            RefreshTokenService refreshTokens
     ) {
         this.users = users;
         this.passwordEncoder = passwordEncoder;
         this.authManager = authManager;
         this.jwtService = jwtService;
+        this.refreshTokens = refreshTokens;
     }
 
     @PostMapping("/register")
@@ -44,8 +50,7 @@ public class AuthController {
         user.setRoles(Set.of("ROLE_USER"));
 
         users.save(user);
-        String token = jwtService.generateToken(user);
-        return ResponseEntity.ok(new AuthResponse(token));
+        return ResponseEntity.ok(refreshTokens.issue(user));
     }
 
     @PostMapping("/login")
@@ -57,7 +62,34 @@ public class AuthController {
         var user = users.findByUsername(req.username())
                 .orElseThrow();
 
-        String token = jwtService.generateToken(user);
-        return ResponseEntity.ok(new AuthResponse(token));
+        return ResponseEntity.ok(refreshTokens.issue(user));
+    }
+
+    /**
+     * Обмен refresh-токена на новую пару без проверки пароля.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody @Valid RefreshRequest req) {
+        return refreshTokens.rotate(req.refreshToken())
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body("Refresh-токен недействителен"));
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(
+            @RequestBody(required = false) LogoutRequest req,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader
+    ) {
+        Claims accessClaims = null;
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            try {
+                accessClaims = jwtService.parse(authHeader.substring(7));
+            } catch (Exception e) {
+                // истёкший или некорректный токен отзывать не нужно
+            }
+        }
+        refreshTokens.logout(req != null ? req.refreshToken() : null, accessClaims);
+        return ResponseEntity.ok().build();
     }
 }
@@ -19,6 +19,19 @@ record LoginRequest(
         @NotBlank String password
 ) { }
 
+record RefreshRequest(
+        @NotBlank String refreshToken
+) { }
+
+record LogoutRequest(
+        String refreshToken
+) { }
+
+/**
+ * expiresIn — срок жизни access-токена в секундах.
+ */
 record AuthResponse(
-        String accessToken
+        String accessToken,
+        String refreshToken,
+        long expiresIn
 ) { }
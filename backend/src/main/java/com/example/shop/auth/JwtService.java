@@ -1,6 +1,7 @@
 package com.example.shop.auth;
 
 import com.example.shop.user.User;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,6 +11,7 @@ import java.nio.charset.StandardCharsets;
 import javax.crypto.SecretKey;
 import java.time.Instant;
 import java.util.Date;
+import java.util.UUID;
 
 @Service
 public class JwtService {
@@ -25,23 +27,38 @@ public class JwtService {
         this.expirationMillis = expirationMinutes * 60_000;
     }
 
-    public String generateToken(User user) {
+    /**
+     * Выданный access-токен: jti нужен, чтобы его можно было отозвать до истечения срока.
+     */
+    public record AccessToken(String value, String jti, Instant expiresAt) { }
+
+    public AccessToken generateToken(User user) {
         Instant now = Instant.now();
-        return Jwts.builder()
+        Instant expiresAt = now.plusMillis(expirationMillis);
+        String jti = UUID.randomUUID().toString();
+        String value = Jwts.builder()
+                .id(jti)
                 .subject(user.getUsername())
                 .claim("roles", user.getRoles())
                 .issuedAt(Date.from(now))
-                .expiration(Date.from(now.plusMillis(expirationMillis)))
+                .expiration(Date.from(expiresAt))
                 .signWith(key)
                 .compact();
+        return new AccessToken(value, jti, expiresAt);
+    }
+
+    public long getExpirationMillis() {
+        return expirationMillis;
     }
 
-    public String extractUsername(String token) {
+    /**
+     * Проверяет подпись и срок, бросает исключение для некорректного токена.
+     */
+    public Claims parse(String token) {
         return Jwts.parser()
                 .verifyWith(key)
                 .build()
                 .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+                .getPayload();
     }
 }
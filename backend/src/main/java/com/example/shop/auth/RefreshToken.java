@@ -0,0 +1,114 @@
+package com.example.shop.auth;
+
+import com.example.shop.user.User;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Выданный refresh-токен. Сам токен не храним — только его SHA-256.
+ */
+@Entity
+@Table(name = "refresh_tokens")
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private User user;
+
+    @Column(nullable = false, length = 64, unique = true)
+    private String tokenHash;
+
+    /**
+     * Цепочка ротаций: все токены, полученные обменом из одного входа.
+     */
+    @Column(nullable = false, length = 36)
+    private String familyId;
+
+    @Column(nullable = false, length = 36)
+    private String accessJti;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Когда токен обменяли на новый. Повторный обмен — признак кражи.
+     */
+    private Instant usedAt;
+
+    private Instant revokedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(String familyId) {
+        this.familyId = familyId;
+    }
+
+    public String getAccessJti() {
+        return accessJti;
+    }
+
+    public void setAccessJti(String accessJti) {
+        this.accessJti = accessJti;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Instant getUsedAt() {
+        return usedAt;
+    }
+
+    public void setUsedAt(Instant usedAt) {
+        this.usedAt = usedAt;
+    }
+
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(Instant revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+}
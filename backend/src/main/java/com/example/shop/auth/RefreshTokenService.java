@@ -0,0 +1,140 @@
+package com.example.shop.auth;
+
+import com.example.shop.user.User;
+import io.jsonwebtoken.Claims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Пары «короткий access-токен + refresh-токен» с ротацией.
+ * <p>
+ * Каждый обмен refresh-токена выдаёт новый refresh-токен той же цепочки, старый помечается
+ * использованным. Повторный обмен использованного токена означает, что его кто-то скопировал:
+ * вся цепочка отзывается вместе с выданными ей access-токенами. Так вход по паролю
+ * (дорогой BCrypt) нужен только раз в {@code refreshExpiration}.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final RefreshTokenRepository refreshTokens;
+    private final TokenRevocationList revocations;
+    private final JwtService jwtService;
+    private final Duration refreshExpiration;
+
+    public RefreshTokenService(
+            RefreshTokenRepository refreshTokens,
+            TokenRevocationList revocations,
+            JwtService jwtService,
+            @Value("${jwt.refresh-expiration:30d}") Duration refreshExpiration
+    ) {
+        this.refreshTokens = refreshTokens;
+        this.revocations = revocations;
+        this.jwtService = jwtService;
+        this.refreshExpiration = refreshExpiration;
+    }
+
+    /**
+     * Новая цепочка — после входа или регистрации.
+     */
+    @Transactional
+    public AuthResponse issue(User user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Обмен refresh-токена на новую пару. Пусто — токен неизвестен, истёк или отозван.
+     */
+    @Transactional
+    public Optional<AuthResponse> rotate(String refreshToken) {
+        RefreshToken current = refreshTokens.lockByTokenHash(hash(refreshToken)).orElse(null);
+        Instant now = Instant.now();
+        if (current == null || current.getRevokedAt() != null || !current.getExpiresAt().isAfter(now)) {
+            return Optional.empty();
+        }
+        if (current.getUsedAt() != null) {
+            log.warn("Повторное использование refresh-токена пользователя {}, цепочка отозвана",
+                    current.getUser().getUsername());
+            revokeFamily(current.getFamilyId(), now);
+            return Optional.empty();
+        }
+        current.setUsedAt(now);
+        return Optional.of(issue(current.getUser(), current.getFamilyId()));
+    }
+
+    /**
+     * Выход: отзываем цепочку refresh-токена и текущий access-токен.
+     */
+    @Transactional
+    public void logout(String refreshToken, Claims accessClaims) {
+        Instant now = Instant.now();
+        if (refreshToken != null) {
+            refreshTokens.lockByTokenHash(hash(refreshToken))
+                    .ifPresent(t -> revokeFamily(t.getFamilyId(), now));
+        }
+        if (accessClaims != null && accessClaims.getId() != null) {
+            revocations.revoke(accessClaims.getId(), accessClaims.getExpiration().toInstant());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup-interval:PT1H}")
+    @Transactional
+    public void removeExpired() {
+        refreshTokens.deleteExpired(Instant.now());
+    }
+
+    private AuthResponse issue(User user, String familyId) {
+        JwtService.AccessToken access = jwtService.generateToken(user);
+
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String value = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Instant now = Instant.now();
+        RefreshToken token = new RefreshToken();
+        token.setUser(user);
+        token.setTokenHash(hash(value));
+        token.setFamilyId(familyId);
+        token.setAccessJti(access.jti());
+        token.setCreatedAt(now);
+        token.setExpiresAt(now.plus(refreshExpiration));
+        refreshTokens.save(token);
+
+        return new AuthResponse(access.value(), value, jwtService.getExpirationMillis() / 1000);
+    }
+
+    private void revokeFamily(String familyId, Instant now) {
+        for (RefreshToken t : refreshTokens.findByFamilyIdAndRevokedAtIsNull(familyId)) {
+            t.setRevokedAt(now);
+            // access-токен, выданный вместе с этим refresh-токеном, ещё может быть жив
+            revocations.revoke(t.getAccessJti(), t.getCreatedAt().plusMillis(jwtService.getExpirationMillis()));
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.shop.auth;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Отозванный access-токен (по jti). Хранится, пока токен не истёк бы сам.
+ */
+@Entity
+@Table(name = "revoked_tokens")
+public class RevokedToken {
+
+    @Id
+    @Column(length = 36)
+    private String jti;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    protected RevokedToken() {
+    }
+
+    public RevokedToken(String jti, Instant expiresAt) {
+        this.jti = jti;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.shop.auth;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Список отозванных access-токенов (по jti) для проверки в каждом запросе.
+ * <p>
+ * Проверка идёт через фильтр Блума в памяти: для неотозванного токена почти всегда
+ * хватает нескольких обращений к массиву без походов в БД. Только при «возможно»
+ * jti уточняется в основной БД. Фильтр перестраивается из БД раз в {@code reloadInterval},
+ * так что отзыв на другом экземпляре приложения начинает действовать не позже этого интервала.
+ * <p>
+ * Первый раз фильтр строится при создании бина, до запуска веб-сервера. Пока фильтра нет
+ * (БД была недоступна) или он давно не обновлялся, каждый jti проверяется в БД: отозванный
+ * токен не должен проходить из-за того, что фильтр не загрузился. Если недоступна и БД,
+ * проверка бросает исключение и запрос остаётся неаутентифицированным.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private final RevokedTokenRepository revokedTokens;
+    private final TransactionTemplate tx;
+    private final long reloadIntervalMillis;
+
+    // null, пока фильтр ни разу не загрузился
+    private volatile BloomFilter filter;
+    private volatile long loadedAt;
+
+    // Отозванные здесь после начала последней перезагрузки: снимок БД мог их не увидеть
+    private final Map<String, Long> recent = new ConcurrentHashMap<>();
+
+    public TokenRevocationList(
+            RevokedTokenRepository revokedTokens,
+            PlatformTransactionManager transactionManager,
+            @Value("${jwt.revocation.reload-interval:PT15S}") Duration reloadInterval
+    ) {
+        this.revokedTokens = revokedTokens;
+        // Не read-only: уточнение идёт в основную БД, реплика может ещё не знать об отзыве
+        this.tx = new TransactionTemplate(transactionManager);
+        this.reloadIntervalMillis = reloadInterval.toMillis();
+    }
+
+    /**
+     * Токены без jti выданы до появления отзыва и просто доживают свой срок.
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        BloomFilter current = filter;
+        // Пропущено два перечитывания подряд — фильтр мог не увидеть отзывы на других экземплярах
+        boolean fresh = current != null && System.currentTimeMillis() - loadedAt <= 2 * reloadIntervalMillis;
+        if (fresh && !current.mightContain(jti)) {
+            return false;
+        }
+        return Boolean.TRUE.equals(tx.execute(status -> revokedTokens.existsById(jti)));
+    }
+
+    /**
+     * Вызывается внутри транзакции, которая отзывает токен.
+     */
+    public void revoke(String jti, Instant expiresAt) {
+        if (!expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        revokedTokens.save(new RevokedToken(jti, expiresAt));
+        // До коммита это просто ложное срабатывание фильтра — БД ответит «нет»
+        recent.put(jti, System.currentTimeMillis());
+        BloomFilter current = filter;
+        if (current != null) {
+            current.add(jti);
+        }
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${jwt.revocation.reload-interval:PT15S}",
+            initialDelayString = "${jwt.revocation.reload-interval:PT15S}")
+    public void reload() {
+        try {
+            long startedAt = System.currentTimeMillis();
+            List<String> jtis = tx.execute(status -> revokedTokens.findActiveJtis(Instant.now()));
+
+            recent.values().removeIf(at -> at < startedAt - 2 * reloadIntervalMillis);
+            BloomFilter next = BloomFilter.create(jtis.size() + recent.size());
+            jtis.forEach(next::add);
+            recent.keySet().forEach(next::add);
+            filter = next;
+            loadedAt = startedAt;
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить список отозванных токенов", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.cleanup-interval:PT1H}")
+    public void removeExpired() {
+        try {
+            tx.executeWithoutResult(status -> revokedTokens.deleteExpired(Instant.now()));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить истёкшие отозванные токены", e);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.shop.cache;
+
+import com.example.shop.product.Product;
+import com.example.shop.product.ProductChangedEvent;
+import com.example.shop.user.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Инвалидация локальных кэшей (второй уровень Hibernate) при изменениях на других экземплярах.
+ * <p>
+ * Сообщения шлют триггеры БД через NOTIFY (см. миграцию V9), брокер не нужен. Каждый экземпляр
+ * держит своё отдельное соединение с основной БД (не из пула) с LISTEN и в одном потоке
+ * разбирает уведомления пачками: товары вытесняются и сразу перечитываются с основной БД
+ * в обход кэша с перезаписью (чтобы кэш не остался с копией отстающей реплики), у пользователей вытесняются сущность, роли
+ * и кэш запросов findByUsername. Свои же изменения тоже приходят — лишнее вытеснение безвредно.
+ * <p>
+ * Перечитанные товары публикуются как {@link ProductChangedEvent}: так подписчики SSE-потока
+ * на любом экземпляре узнают об изменениях, сделанных на любом другом.
+ * <p>
+ * Пока соединения нет, уведомления теряются, поэтому после каждого (пере)подключения
+ * кэши товаров и пользователей сбрасываются целиком.
+ */
+@Component
+public class InvalidationBus implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private static final String CHANNEL = "cache_invalidation";
+    private static final String USER_ROLES = User.class.getName() + ".roles";
+
+    private final DataSourceProperties dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final Cache cache;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+    private final long pollMillis;
+    private final long keepaliveMillis;
+    private final long reconnectDelayMillis;
+
+    private volatile boolean running;
+    private volatile Connection connection;
+    private Thread listener;
+
+    public InvalidationBus(
+            DataSourceProperties dataSource,
+            EntityManagerFactory entityManagerFactory,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher events,
+            @Value("${app.cache.invalidation.poll-interval:500ms}") Duration pollInterval,
+            @Value("${app.cache.invalidation.keepalive:30s}") Duration keepalive,
+            @Value("${app.cache.invalidation.reconnect-delay:5s}") Duration reconnectDelay
+    ) {
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        // Не read-only: перечитываем с основной БД, реплика может ещё не видеть изменение
+        this.tx = new TransactionTemplate(transactionManager);
+        this.events = events;
+        this.pollMillis = pollInterval.toMillis();
+        this.keepaliveMillis = keepalive.toMillis();
+        this.reconnectDelayMillis = reconnectDelay.toMillis();
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(
+                    dataSource.determineUrl(),
+                    dataSource.determineUsername(),
+                    dataSource.determinePassword())) {
+                connection = conn;
+                try (Statement statement = conn.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                resync();
+
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                long lastActivity = System.currentTimeMillis();
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications((int) pollMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        apply(notifications);
+                        lastActivity = System.currentTimeMillis();
+                    } else if (System.currentTimeMillis() - lastActivity > keepaliveMillis) {
+                        // Молчание может означать и оборванное соединение
+                        if (!conn.isValid(5)) {
+                            throw new SQLException("Соединение LISTEN потеряно");
+                        }
+                        lastActivity = System.currentTimeMillis();
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Шина инвалидации кэшей отключена, переподключение через {} мс", reconnectDelayMillis, e);
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } finally {
+                connection = null;
+            }
+        }
+    }
+
+    private void apply(PGNotification[] notifications) {
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        for (PGNotification notification : notifications) {
+            String payload = notification.getParameter();
+            try {
+                long id = Long.parseLong(payload.substring(1));
+                switch (payload.charAt(0)) {
+                    case 'p' -> productIds.add(id);
+                    case 'u' -> userIds.add(id);
+                    default -> throw new IllegalArgumentException(payload);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Непонятное сообщение шины инвалидации: {}, сбрасываем кэши", payload);
+                resync();
+                return;
+            }
+        }
+
+        if (!userIds.isEmpty()) {
+            for (Long id : userIds) {
+                cache.evictEntityData(User.class, id);
+                cache.evictCollectionData(USER_ROLES, id);
+            }
+            // Результаты findByUsername закэшированы по имени, а не по id
+            cache.evictDefaultQueryRegion();
+        }
+        if (!productIds.isEmpty()) {
+            for (Long id : productIds) {
+                cache.evictEntityData(Product.class, id);
+            }
+            // Удалённых уже нет в БД, остальные снова попадают в кэш свежими. REFRESH: строки читаются
+            // только из БД и перезаписывают кэш, даже если после вытеснения туда успела попасть
+            // устаревшая копия, прочитанная с реплики
+            List<Long> ids = new ArrayList<>(productIds);
+            List<Product> loaded = tx.execute(status -> EntityManagerFactoryUtils
+                    .getTransactionalEntityManager(entityManagerFactory)
+                    .unwrap(Session.class)
+                    .byMultipleIds(Product.class)
+                    .with(CacheMode.REFRESH)
+                    .multiLoad(ids));
+            // Порядок тот же, что у ids; удалённого товара нет — на его месте null
+            for (int i = 0; i < ids.size(); i++) {
+                Product product = loaded.get(i);
+                events.publishEvent(product != null
+                        ? ProductChangedEvent.of(product)
+                        : ProductChangedEvent.deleted(ids.get(i)));
+            }
+        }
+    }
+
+    private void resync() {
+        cache.evictEntityData(Product.class);
+        cache.evictEntityData(User.class);
+        cache.evictCollectionData(USER_ROLES);
+        cache.evictDefaultQueryRegion();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listener = new Thread(this::listen, "cache-invalidation");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = listener;
+        listener = null;
+        if (thread == null) {
+            return;
+        }
+        // Закрытое соединение прерывает ожидание getNotifications
+        Connection conn = connection;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // поток всё равно завершится
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Слушаем до того, как веб-сервер начнёт принимать запросы, и дольше него
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+}
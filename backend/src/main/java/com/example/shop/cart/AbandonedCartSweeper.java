@@ -0,0 +1,152 @@
+package com.example.shop.cart;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Фоновая очистка брошенных корзин: удаляет позиции корзин, которые не менялись дольше {@code ttl}.
+ * <p>
+ * Корзина считается брошенной целиком: строка удаляется, только если у пользователя нет
+ * ни одной позиции новее порога. Старые строки перебираются по индексу (updated_at, id)
+ * пачками по {@code batchSize}; каждая пачка удаляется отдельной короткой транзакцией,
+ * между пачками — пауза {@code pause}, чтобы не держать блокировки и не мешать живому трафику.
+ * Позицию, которую пользователь успел изменить во время очистки, delete перепроверит
+ * по updated_at и не тронет.
+ * <p>
+ * Корзины, загруженные в память {@link CartStore} (их недавно открывали), не удаляются,
+ * а об удалённых строках хранилище узнаёт сразу, чтобы не показывать их из памяти.
+ * <p>
+ * Метрики: {@code cart.sweeper.rows} — удалено строк, {@code cart.sweeper.duration} — длительность прохода.
+ */
+@Component
+public class AbandonedCartSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(AbandonedCartSweeper.class);
+
+    private record Key(long id, long userId, Timestamp updatedAt) { }
+
+    private final JdbcTemplate jdbc;
+    private final CartStore cartStore;
+    private final TransactionTemplate tx;
+    private final Duration ttl;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final Counter sweptRows;
+    private final Timer sweepDuration;
+
+    public AbandonedCartSweeper(
+            JdbcTemplate jdbc,
+            CartStore cartStore,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.cart.sweeper.ttl:30d}") Duration ttl,
+            @Value("${app.cart.sweeper.batch-size:500}") int batchSize,
+            @Value("${app.cart.sweeper.pause:200ms}") Duration pause
+    ) {
+        this.jdbc = jdbc;
+        this.cartStore = cartStore;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+        this.batchSize = batchSize;
+        this.pauseMillis = pause.toMillis();
+        this.sweptRows = Counter.builder("cart.sweeper.rows")
+                .description("Удалено позиций брошенных корзин")
+                .register(meterRegistry);
+        this.sweepDuration = Timer.builder("cart.sweeper.duration")
+                .description("Длительность прохода очистки брошенных корзин")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.cart.sweeper.interval:PT1H}",
+            initialDelayString = "${app.cart.sweeper.initial-delay:PT5M}")
+    public void sweep() {
+        long startedAt = System.nanoTime();
+        long swept = 0;
+        try {
+            Timestamp cutoff = Timestamp.from(Instant.now().minus(ttl));
+            Key after = new Key(0, 0, new Timestamp(0));
+            while (true) {
+                List<Key> batch = nextBatch(cutoff, after);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Long[] ids = batch.stream()
+                        .filter(key -> !cartStore.isResident(key.userId()))
+                        .map(Key::id)
+                        .toArray(Long[]::new);
+                if (ids.length > 0) {
+                    List<Long> sweptUsers = tx.execute(status -> deleteAbandoned(ids, cutoff));
+                    if (sweptUsers != null && !sweptUsers.isEmpty()) {
+                        swept += sweptUsers.size();
+                        // Корзину могли загрузить в память, пока шла пачка
+                        cartStore.afterSweep(new HashSet<>(sweptUsers));
+                    }
+                }
+
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                after = batch.get(batch.size() - 1);
+                Thread.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Очистка брошенных корзин прервана, удалено {} строк", swept, e);
+        } finally {
+            long elapsed = System.nanoTime() - startedAt;
+            sweptRows.increment(swept);
+            sweepDuration.record(Duration.ofNanos(elapsed));
+            if (swept > 0) {
+                log.info("Очистка брошенных корзин: удалено {} строк за {} мс", swept, elapsed / 1_000_000);
+            }
+        }
+    }
+
+    // Чтение вне транзакции: пачку ключей можно взять из любого свежего снимка
+    private List<Key> nextBatch(Timestamp cutoff, Key after) {
+        return jdbc.query("""
+                        select id, user_id, updated_at from cart_items
+                        where updated_at < ? and (updated_at, id) > (?, ?)
+                        order by updated_at, id
+                        limit ?
+                        """,
+                (rs, rowNum) -> new Key(rs.getLong("id"), rs.getLong("user_id"), rs.getTimestamp("updated_at")),
+                cutoff, after.updatedAt(), after.id(), batchSize);
+    }
+
+    // Возвращает user_id каждой удалённой строки
+    private List<Long> deleteAbandoned(Long[] ids, Timestamp cutoff) {
+        return jdbc.query("""
+                        delete from cart_items c
+                        where c.id = any(?)
+                          and c.updated_at < ?
+                          and not exists (
+                              select 1 from cart_items fresh
+                              where fresh.user_id = c.user_id and fresh.updated_at >= ?
+                          )
+                        returning c.user_id
+                        """,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids));
+                    ps.setTimestamp(2, cutoff);
+                    ps.setTimestamp(3, cutoff);
+                },
+                (rs, rowNum) -> rs.getLong(1));
+    }
+}
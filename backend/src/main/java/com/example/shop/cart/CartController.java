@@ -1,11 +1,14 @@
 package com.example.shop.cart;
 
+import com.example.shop.pricing.PriceQuote;
+import com.example.shop.pricing.PricingEngine;
 import com.example.shop.product.Product;
 import com.example.shop.product.ProductRepository;
 import com.example.shop.user.User;
 import com.example.shop.user.UserRepository;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -15,18 +18,21 @@ import java.util.List;
 @CrossOrigin(origins = "*", allowCredentials = "false")
 public class CartController {
 
-    private final CartItemRepository cartItems;
+    private final CartStore cartStore;
     private final UserRepository users;
     private final ProductRepository products;
+    private final PricingEngine pricingEngine;
 
     public CartController(
-            CartItemRepository cartItems,
+            CartStore cartStore,
             UserRepository users,
-            ProductRepository products
+            ProductRepository products,
+            PricingEngine pricingEngine
     ) {
-        this.cartItems = cartItems;
+        this.cartStore = cartStore;
         this.users = users;
         this.products = products;
+        this.pricingEngine = pricingEngine;
     }
 
     private User currentUser(Authentication auth) {
@@ -35,8 +41,26 @@ public class CartController {
     }
 
     @GetMapping
+    @Transactional(readOnly = true)
     public List<CartItem> getCart(Authentication auth) {
-        return cartItems.findByUser(currentUser(auth));
+        return cartStore.getCart(currentUser(auth));
+    }
+
+    /**
+     * Итог по корзине с учётом акций. ids — выбранные позиции (по умолчанию вся корзина).
+     */
+    @GetMapping("/quote")
+    @Transactional(readOnly = true)
+    public PriceQuote quote(
+            @RequestParam(required = false) List<Long> ids,
+            @RequestParam(required = false) String coupon,
+            Authentication auth
+    ) {
+        List<CartItem> items = cartStore.getCart(currentUser(auth));
+        if (ids != null && !ids.isEmpty()) {
+            items = items.stream().filter(ci -> ids.contains(ci.getId())).toList();
+        }
+        return pricingEngine.quote(items, coupon);
     }
 
     private int maxAvailable(Product product) {
@@ -64,26 +88,14 @@ public class CartController {
             return ResponseEntity.badRequest().build();
         }
 
-        var existingOpt = cartItems.findByUserAndProductId(user, productId);
-
-        CartItem item = existingOpt.orElse(null);
-        int currentQty = item != null ? item.getQuantity() : 0;
+        int currentQty = cartStore.findQuantity(user, productId).orElse(0);
 
         int newQty = currentQty + requested;
         if (newQty > stockLimit) {
             newQty = stockLimit;
         }
 
-        if (item == null) {
-            item = new CartItem();
-            item.setUser(user);
-            item.setProduct(product);
-            item.setQuantity(newQty);
-        } else {
-            item.setQuantity(newQty);
-        }
-
-        cartItems.save(item);
+        cartStore.setQuantity(user, product, newQty);
         return ResponseEntity.ok().build();
     }
 
@@ -94,11 +106,11 @@ public class CartController {
             Authentication auth
     ) {
         var user = currentUser(auth);
-        var item = cartItems.findByUserAndProductId(user, productId)
-                .orElseThrow();
+        // Товара в корзине нет – как и раньше, это ошибка
+        cartStore.findQuantity(user, productId).orElseThrow();
 
         if (quantity == null || quantity <= 0) {
-            cartItems.delete(item);
+            cartStore.remove(user, productId);
             return ResponseEntity.ok().build();
         }
 
@@ -107,7 +119,7 @@ public class CartController {
 
         if (stockLimit <= 0) {
             // Нет остатка – удаляем товар из корзины
-            cartItems.delete(item);
+            cartStore.remove(user, productId);
             return ResponseEntity.ok().build();
         }
 
@@ -116,8 +128,7 @@ public class CartController {
             newQty = stockLimit;
         }
 
-        item.setQuantity(newQty);
-        cartItems.save(item);
+        cartStore.setQuantity(user, product, newQty);
 
         return ResponseEntity.ok().build();
     }
@@ -128,8 +139,7 @@ public class CartController {
             Authentication auth
     ) {
         var user = currentUser(auth);
-        cartItems.findByUserAndProductId(user, productId)
-                .ifPresent(cartItems::delete);
+        cartStore.remove(user, productId);
         return ResponseEntity.ok().build();
     }
 }
@@ -4,6 +4,9 @@ import com.example.shop.product.Product;
 import com.example.shop.user.User;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 
 @Entity
 @Table(
@@ -28,6 +31,12 @@ public class CartItem {
     @Column(nullable = false)
     private Integer quantity;
 
+    // Ставится при каждой записи строки; по нему удаляются брошенные корзины (AbandonedCartSweeper)
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    @JsonIgnore
+    private Instant updatedAt;
+
     public CartItem() {
     }
 
@@ -69,4 +78,8 @@ public class CartItem {
     public void setQuantity(Integer quantity) {
         this.quantity = quantity;
     }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
 }
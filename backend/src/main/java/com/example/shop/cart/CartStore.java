@@ -0,0 +1,51 @@
+package com.example.shop.cart;
+
+import com.example.shop.product.Product;
+import com.example.shop.user.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Хранилище корзин. По умолчанию каждое изменение сразу пишется в cart_items
+ * ({@link DirectCartStore}); в режиме {@code app.cart.store=write-back} корзины
+ * живут в памяти и сбрасываются в БД пачками ({@link WriteBackCartStore}).
+ */
+public interface CartStore {
+
+    List<CartItem> getCart(User user);
+
+    Optional<Integer> findQuantity(User user, Long productId);
+
+    void setQuantity(User user, Product product, int quantity);
+
+    void remove(User user, Long productId);
+
+    /**
+     * Позиции корзины для оформления заказа: всё несохранённое сначала
+     * синхронно записывается в БД, возвращаются строки из cart_items.
+     */
+    List<CartItem> checkoutItems(User user);
+
+    /**
+     * Синхронно записывает в cart_items все несохранённые правки пользователя.
+     */
+    void flush(User user);
+
+    /**
+     * Вызывается после того, как оформленные позиции удалены из cart_items.
+     */
+    void afterCheckout(User user, Collection<Long> productIds);
+
+    /**
+     * Корзина пользователя сейчас загружена в память этого экземпляра, то есть её недавно открывали.
+     * Такие корзины очистка брошенных корзин не трогает.
+     */
+    boolean isResident(Long userId);
+
+    /**
+     * Вызывается после того, как очистка брошенных корзин удалила строки этих пользователей из cart_items.
+     */
+    void afterSweep(Collection<Long> userIds);
+}
@@ -0,0 +1,40 @@
+package com.example.shop.cart;
+
+import com.example.shop.product.ProductRepository;
+import com.example.shop.user.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class CartStoreConfig {
+
+    @Bean
+    public CartStore cartStore(
+            @Value("${app.cart.store:direct}") String mode,
+            @Value("${app.cart.flush-interval:5s}") Duration flushInterval,
+            @Value("${app.cart.flush-batch-size:100}") int flushBatchSize,
+            @Value("${app.cart.idle-evict:30m}") Duration idleEvict,
+            CartItemRepository cartItems,
+            ProductRepository products,
+            UserRepository users,
+            PlatformTransactionManager transactionManager
+    ) {
+        if ("write-back".equals(mode)) {
+            return new WriteBackCartStore(
+                    cartItems,
+                    products,
+                    users,
+                    new TransactionTemplate(transactionManager),
+                    flushInterval.toMillis(),
+                    flushBatchSize,
+                    idleEvict.toMillis()
+            );
+        }
+        return new DirectCartStore(cartItems);
+    }
+}
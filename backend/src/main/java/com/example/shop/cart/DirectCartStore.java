@@ -0,0 +1,77 @@
+package com.example.shop.cart;
+
+import com.example.shop.product.Product;
+import com.example.shop.user.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Корзина напрямую в cart_items: каждое изменение — отдельная запись в БД.
+ */
+public class DirectCartStore implements CartStore {
+
+    private final CartItemRepository cartItems;
+
+    public DirectCartStore(CartItemRepository cartItems) {
+        this.cartItems = cartItems;
+    }
+
+    @Override
+    public List<CartItem> getCart(User user) {
+        return cartItems.findByUser(user);
+    }
+
+    @Override
+    public Optional<Integer> findQuantity(User user, Long productId) {
+        return cartItems.findByUserAndProductId(user, productId)
+                .map(CartItem::getQuantity);
+    }
+
+    @Override
+    public void setQuantity(User user, Product product, int quantity) {
+        CartItem item = cartItems.findByUserAndProductId(user, product.getId())
+                .orElse(null);
+
+        if (item == null) {
+            item = new CartItem();
+            item.setUser(user);
+            item.setProduct(product);
+        }
+        item.setQuantity(quantity);
+
+        cartItems.save(item);
+    }
+
+    @Override
+    public void remove(User user, Long productId) {
+        cartItems.findByUserAndProductId(user, productId)
+                .ifPresent(cartItems::delete);
+    }
+
+    @Override
+    public List<CartItem> checkoutItems(User user) {
+        return cartItems.findByUser(user);
+    }
+
+    @Override
+    public void flush(User user) {
+        // всё и так уже в cart_items
+    }
+
+    @Override
+    public void afterCheckout(User user, Collection<Long> productIds) {
+        // строки уже удалены из cart_items, в памяти ничего не держим
+    }
+
+    @Override
+    public boolean isResident(Long userId) {
+        return false;
+    }
+
+    @Override
+    public void afterSweep(Collection<Long> userIds) {
+        // в памяти ничего не держим
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.shop.cart;
+
+import com.example.shop.config.ReadWriteRoutingDataSource;
+import com.example.shop.product.Product;
+import com.example.shop.product.ProductRepository;
+import com.example.shop.user.User;
+import com.example.shop.user.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Корзины в памяти с отложенной записью в cart_items.
+ * <p>
+ * Изменения копятся по каждому пользователю (несколько правок одного товара
+ * схлопываются в одну) и раз в {@code flushIntervalMillis} пишутся в БД
+ * пачками по {@code batchSize} корзин в одной транзакции. При оформлении
+ * заказа корзина пользователя сбрасывается синхронно, при остановке
+ * приложения — все корзины.
+ * <p>
+ * Позиции, которых ещё нет в БД, отдаются с id = -productId; при оформлении
+ * заказа такие id сопоставляются с товаром (см. OrderController).
+ * <p>
+ * Состояние локально для одного экземпляра приложения: при нескольких
+ * репликах бэкенда нужна привязка пользователя к экземпляру.
+ */
+public class WriteBackCartStore implements CartStore, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBackCartStore.class);
+
+    private final CartItemRepository cartItems;
+    private final ProductRepository products;
+    private final UserRepository users;
+    private final TransactionTemplate tx;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+    private final long idleEvictMillis;
+
+    private final Map<Long, UserCart> carts = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService flusher;
+
+    public WriteBackCartStore(
+            CartItemRepository cartItems,
+            ProductRepository products,
+            UserRepository users,
+            TransactionTemplate tx,
+            long flushIntervalMillis,
+            int batchSize,
+            long idleEvictMillis
+    ) {
+        this.cartItems = cartItems;
+        this.products = products;
+        this.users = users;
+        this.tx = tx;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+        this.idleEvictMillis = idleEvictMillis;
+    }
+
+    private static final class UserCart {
+        final Long userId;
+        // productId -> количество, в порядке добавления
+        final Map<Long, Integer> quantities = new LinkedHashMap<>();
+        // productId -> id строки в cart_items, если она уже записана
+        final Map<Long, Long> rowIds = new HashMap<>();
+        // товары, изменённые после последней записи в БД
+        final Set<Long> dirty = new HashSet<>();
+        // запись одной корзины в БД не должна идти параллельно с другой
+        final ReentrantLock flushLock = new ReentrantLock();
+        long lastAccess = System.currentTimeMillis();
+        boolean evicted;
+
+        UserCart(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    // ---------- операции с корзиной ----------
+
+    @Override
+    public List<CartItem> getCart(User user) {
+        record Line(Long productId, Integer quantity, Long rowId) { }
+
+        List<Line> lines = withCart(user, cart -> {
+            List<Line> snapshot = new ArrayList<>(cart.quantities.size());
+            cart.quantities.forEach((productId, qty) ->
+                    snapshot.add(new Line(productId, qty, cart.rowIds.get(productId))));
+            return snapshot;
+        });
+
+        List<CartItem> result = new ArrayList<>(lines.size());
+        for (Line line : lines) {
+            // findById берёт товар из кэша второго уровня
+            products.findById(line.productId()).ifPresent(product -> result.add(new CartItem(
+                    line.rowId() != null ? line.rowId() : -line.productId(),
+                    user,
+                    product,
+                    line.quantity()
+            )));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Integer> findQuantity(User user, Long productId) {
+        return withCart(user, cart -> Optional.ofNullable(cart.quantities.get(productId)));
+    }
+
+    @Override
+    public void setQuantity(User user, Product product, int quantity) {
+        withCart(user, cart -> {
+            cart.quantities.put(product.getId(), quantity);
+            cart.dirty.add(product.getId());
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(User user, Long productId) {
+        withCart(user, cart -> {
+            if (cart.quantities.remove(productId) != null) {
+                cart.dirty.add(productId);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<CartItem> checkoutItems(User user) {
+        flush(user);
+        return cartItems.findByUser(user);
+    }
+
+    @Override
+    public void flush(User user) {
+        UserCart cart = carts.get(user.getId());
+        if (cart == null) {
+            return;
+        }
+        cart.flushLock.lock();
+        try {
+            // Ошибку записи здесь не глотаем: заказ по устаревшей корзине оформлять нельзя
+            flush(List.of(cart), true);
+        } finally {
+            cart.flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void afterCheckout(User user, Collection<Long> productIds) {
+        UserCart cart = carts.get(user.getId());
+        if (cart == null) {
+            return;
+        }
+        synchronized (cart) {
+            for (Long productId : productIds) {
+                cart.rowIds.remove(productId);
+                // Если товар успели снова изменить во время оформления — оставляем правку
+                if (!cart.dirty.contains(productId)) {
+                    cart.quantities.remove(productId);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isResident(Long userId) {
+        return carts.containsKey(userId);
+    }
+
+    @Override
+    public void afterSweep(Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            UserCart cart = carts.get(userId);
+            if (cart == null) {
+                continue;
+            }
+            // Под flushLock: запись, которая уже идёт, не должна разойтись с очисткой
+            cart.flushLock.lock();
+            try {
+                synchronized (cart) {
+                    // Строк в БД больше нет: в памяти остаются только ещё не записанные правки
+                    cart.quantities.keySet().retainAll(cart.dirty);
+                    cart.rowIds.clear();
+                }
+            } finally {
+                cart.flushLock.unlock();
+            }
+        }
+    }
+
+    private <T> T withCart(User user, Function<UserCart, T> action) {
+        while (true) {
+            UserCart cart = carts.get(user.getId());
+            if (cart == null) {
+                UserCart loaded = load(user);
+                cart = carts.putIfAbsent(user.getId(), loaded);
+                if (cart == null) {
+                    cart = loaded;
+                }
+            }
+            synchronized (cart) {
+                // Корзину могли выгрузить, пока мы её получали, — тогда берём заново
+                if (!cart.evicted) {
+                    cart.lastAccess = System.currentTimeMillis();
+                    return action.apply(cart);
+                }
+            }
+        }
+    }
+
+    private UserCart load(User user) {
+        UserCart cart = new UserCart(user.getId());
+        for (CartItem item : cartItems.findByUser(user)) {
+            Long productId = item.getProduct().getId();
+            cart.quantities.put(productId, item.getQuantity());
+            cart.rowIds.put(productId, item.getId());
+        }
+        return cart;
+    }
+
+    // ---------- запись в БД ----------
+
+    /**
+     * Записывает все изменённые корзины пачками и выгружает давно не
+     * использовавшиеся корзины без несохранённых изменений.
+     */
+    void flushAll() {
+        List<UserCart> batch = new ArrayList<>(batchSize);
+        for (UserCart cart : carts.values()) {
+            boolean changed;
+            synchronized (cart) {
+                changed = !cart.dirty.isEmpty();
+            }
+            if (!changed) {
+                continue;
+            }
+            batch.add(cart);
+            if (batch.size() == batchSize) {
+                flushBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushBatch(batch);
+        }
+        evictIdle();
+    }
+
+    private void flushBatch(List<UserCart> batch) {
+        for (UserCart cart : batch) {
+            cart.flushLock.lock();
+        }
+        try {
+            flush(batch, false);
+        } finally {
+            for (UserCart cart : batch) {
+                cart.flushLock.unlock();
+            }
+        }
+    }
+
+    // Вызывается под flushLock всех корзин из списка
+    private void flush(List<UserCart> batch, boolean rethrow) {
+        Map<UserCart, Map<Long, Integer>> changes = new LinkedHashMap<>();
+        for (UserCart cart : batch) {
+            synchronized (cart) {
+                if (cart.dirty.isEmpty()) {
+                    continue;
+                }
+                Map<Long, Integer> cartChanges = new HashMap<>();
+                for (Long productId : cart.dirty) {
+                    // null — товар удалён из корзины
+                    cartChanges.put(productId, cart.quantities.get(productId));
+                }
+                cart.dirty.clear();
+                changes.put(cart, cartChanges);
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Map<UserCart, Map<Long, Long>> written;
+        try {
+            written = tx.execute(status -> {
+                Map<UserCart, Map<Long, Long>> rowIds = new HashMap<>();
+                changes.forEach((cart, cartChanges) -> rowIds.put(cart, write(cart.userId, cartChanges)));
+                return rowIds;
+            });
+        } catch (RuntimeException e) {
+            // Возвращаем изменения, чтобы записать их в следующий раз
+            changes.forEach((cart, cartChanges) -> {
+                synchronized (cart) {
+                    cart.dirty.addAll(cartChanges.keySet());
+                }
+            });
+            if (rethrow) {
+                throw e;
+            }
+            log.warn("Не удалось записать {} корзин(ы), повторим позже", changes.size(), e);
+            return;
+        }
+
+        written.forEach((cart, rowIds) -> {
+            synchronized (cart) {
+                rowIds.forEach((productId, rowId) -> {
+                    if (rowId != null) {
+                        cart.rowIds.put(productId, rowId);
+                    } else {
+                        cart.rowIds.remove(productId);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Применяет изменения одной корзины к cart_items.
+     * Возвращает productId -> id строки (null, если строка удалена).
+     */
+    private Map<Long, Long> write(Long userId, Map<Long, Integer> changes) {
+        User user = users.getReferenceById(userId);
+
+        Map<Long, CartItem> rows = new HashMap<>();
+        for (CartItem item : cartItems.findByUser(user)) {
+            rows.put(item.getProduct().getId(), item);
+        }
+
+        List<CartItem> toSave = new ArrayList<>();
+        List<CartItem> toDelete = new ArrayList<>();
+        Map<Long, Long> rowIds = new HashMap<>();
+
+        changes.forEach((productId, qty) -> {
+            CartItem row = rows.get(productId);
+            if (qty == null) {
+                if (row != null) {
+                    toDelete.add(row);
+                }
+                rowIds.put(productId, null);
+            } else if (row != null) {
+                row.setQuantity(qty);
+                toSave.add(row);
+            } else {
+                // Товар могли удалить из каталога, пока он лежал в корзине
+                products.findById(productId).ifPresent(product ->
+                        toSave.add(new CartItem(null, user, product, qty)));
+            }
+        });
+
+        cartItems.deleteAll(toDelete);
+        for (CartItem item : cartItems.saveAll(toSave)) {
+            rowIds.put(item.getProduct().getId(), item.getId());
+        }
+        return rowIds;
+    }
+
+    private void evictIdle() {
+        long threshold = System.currentTimeMillis() - idleEvictMillis;
+        for (UserCart cart : carts.values()) {
+            if (!cart.flushLock.tryLock()) {
+                continue;
+            }
+            try {
+                synchronized (cart) {
+                    if (cart.dirty.isEmpty() && cart.lastAccess < threshold) {
+                        cart.evicted = true;
+                        carts.remove(cart.userId, cart);
+                    }
+                }
+            } finally {
+                cart.flushLock.unlock();
+            }
+        }
+    }
+
+    // ---------- жизненный цикл ----------
+
+    @Override
+    public void start() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(ReadWriteRoutingDataSource.pinnedToPrimary(r), "cart-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                flushAll();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка фоновой записи корзин", e);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        flusher = executor;
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService executor = flusher;
+        flusher = null;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Последняя синхронная запись перед остановкой
+        flushAll();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return flusher != null;
+    }
+
+    @Override
+    public int getPhase() {
+        // Останавливаемся после веб-сервера, чтобы записать правки последних запросов
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.shop.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Ответы в CBOR для клиентов с {@code Accept: application/cbor} (мобильные приложения,
+ * потребители цен): те же DTO и тот же Jackson, но двоичная кодировка — цены и длинные
+ * списки кодируются быстрее и занимают меньше байт. Без такого Accept всё по-прежнему в JSON.
+ * <p>
+ * Конвертер собирается из настроенного Spring Boot билдера, поэтому работают и
+ * {@code fields=} ({@link FieldSelection}), и остальные настройки Jackson.
+ */
+@Configuration
+public class CborConfig implements WebMvcConfigurer {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        // Билдер — prototype, JSON-маппер это не затрагивает
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    /**
+     * Тексты ошибок (ResponseEntity<String>) строковый конвертер записал бы как есть
+     * с типом application/cbor; без него строку кодирует CBOR-конвертер.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.replaceAll(converter -> converter.getClass() == StringHttpMessageConverter.class
+                ? new NonCborStringConverter(((StringHttpMessageConverter) converter).getDefaultCharset())
+                : converter);
+    }
+
+    private static final class NonCborStringConverter extends StringHttpMessageConverter {
+
+        NonCborStringConverter(Charset charset) {
+            super(charset);
+            setWriteAcceptCharset(false);
+        }
+
+        @Override
+        public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+            return !MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType) && super.canWrite(clazz, mediaType);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.shop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Основная БД настраивается как обычно через {@code spring.datasource.*}.
+ * Если задан {@code app.datasource.replica.url}, read-only транзакции
+ * читают с реплики (см. {@link ReadWriteRoutingDataSource}).
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            @Value("${app.datasource.replica.url:}") String replicaUrl,
+            @Value("${app.datasource.replica.username:}") String replicaUsername,
+            @Value("${app.datasource.replica.password:}") String replicaPassword,
+            @Value("${app.datasource.replica.maximum-pool-size:10}") int replicaPoolSize,
+            @Value("${app.datasource.replica.connection-timeout:1s}") Duration replicaConnectionTimeout,
+            @Value("${app.datasource.replica.retry-after:30s}") Duration replicaRetryAfter
+    ) {
+        HikariDataSource replica = null;
+        if (!replicaUrl.isBlank()) {
+            replica = new HikariDataSource();
+            replica.setPoolName("replica");
+            replica.setJdbcUrl(replicaUrl);
+            replica.setUsername(replicaUsername.isBlank() ? properties.determineUsername() : replicaUsername);
+            replica.setPassword(replicaPassword.isBlank() ? properties.determinePassword() : replicaPassword);
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            // Недоступная реплика не должна ни ронять старт, ни надолго задерживать запрос
+            replica.setConnectionTimeout(replicaConnectionTimeout.toMillis());
+            replica.setInitializationFailTimeout(-1);
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource, replica, replicaRetryAfter.toMillis());
+    }
+
+    /**
+     * Задачи {@code @Scheduled} (очистки, relay, архив, пересчёты) работают с основной БД:
+     * им нужны свежие данные, а не отстающая реплика.
+     */
+    @Bean
+    public ThreadPoolTaskSchedulerCustomizer schedulerOnPrimary() {
+        return scheduler -> scheduler.setThreadFactory(
+                task -> scheduler.newThread(ReadWriteRoutingDataSource.pinnedToPrimary(task)));
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.shop.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Параметр {@code fields=} — сериализовать только перечисленные свойства.
+ * <p>
+ * Классы, которые это поддерживают, помечаются {@code @JsonFilter(FieldSelection.FILTER)}.
+ * Без параметра фильтр не задан и объект сериализуется целиком.
+ */
+@Configuration
+public class FieldSelection {
+
+    public static final String FILTER = "fields";
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer fieldSelectionDefaults() {
+        // Фильтр по умолчанию отсутствует — значит, без фильтрации
+        return builder -> builder.filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+    }
+
+    public static MappingJacksonValue apply(Object body, String fields) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        if (fields == null || fields.isBlank()) {
+            return value;
+        }
+        Set<String> names = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+        value.setFilters(new SimpleFilterProvider()
+                .addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names)));
+        return value;
+    }
+}
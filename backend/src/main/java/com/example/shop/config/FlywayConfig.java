@@ -0,0 +1,30 @@
+package com.example.shop.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Миграции при старте можно пропустить свойством {@code app.startup.training=true} —
+ * так делает тренировочный запуск архива CDS (Dockerfile, {@code gradle cdsArchive}),
+ * у которого нет БД.
+ * <p>
+ * {@code spring.flyway.enabled=false} для этого не годится: в сборке с Spring AOT условия
+ * автоконфигурации зафиксированы при сборке, бин flywayInitializer есть всегда и при старте
+ * подключается к БД. Стратегия же — обычный бин, и свойство читается при запуске.
+ */
+@Configuration
+public class FlywayConfig {
+
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(
+            @Value("${app.startup.training:false}") boolean training
+    ) {
+        return flyway -> {
+            if (!training) {
+                flyway.migrate();
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.shop.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Отправляет read-only транзакции на реплику, всё остальное — на основную БД.
+ * <p>
+ * Работает только вместе с {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * флаг read-only у транзакции выставляется уже после её открытия, поэтому
+ * реальное соединение нужно брать как можно позже — на первом запросе.
+ * <p>
+ * Если реплика недоступна, запрос уходит на основную БД, а реплика
+ * пропускается до истечения {@code retryAfterMillis}.
+ * <p>
+ * Репозитории Spring Data и вне транзакции читают в read-only транзакции, то есть с реплики.
+ * Фоновые задачи, которым нужны свежие данные, закрепляются за основной БД явно:
+ * {@link #onPrimary(Supplier)} или поток, запущенный через {@link #pinnedToPrimary(Runnable)}.
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    // Запросы пользователя, который только что что-то изменил, читаем с основной БД
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long retryAfterMillis;
+
+    private volatile long replicaDownUntil;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, long retryAfterMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public static void pinToPrimary(boolean pinned) {
+        if (pinned) {
+            PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        } else {
+            PINNED_TO_PRIMARY.remove();
+        }
+    }
+
+    /**
+     * Выполняет действие с чтением из основной БД, даже в read-only транзакциях.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PINNED_TO_PRIMARY.get();
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PINNED_TO_PRIMARY.remove();
+            }
+        }
+    }
+
+    /**
+     * Для фоновых потоков: всё, что выполнит задача, читает из основной БД.
+     */
+    public static Runnable pinnedToPrimary(Runnable task) {
+        return () -> onPrimary(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private boolean useReplica() {
+        return replica != null
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && PINNED_TO_PRIMARY.get() == null
+                && System.currentTimeMillis() >= replicaDownUntil;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (useReplica()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                markReplicaDown(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (useReplica()) {
+            try {
+                return replica.getConnection(username, password);
+            } catch (SQLException e) {
+                markReplicaDown(e);
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    private void markReplicaDown(SQLException e) {
+        replicaDownUntil = System.currentTimeMillis() + retryAfterMillis;
+        log.warn("Реплика недоступна, чтение идёт с основной БД ближайшие {} мс: {}",
+                retryAfterMillis, e.getMessage());
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        // Основной пул закрывает Spring, реплику создаём сами — сами и закрываем
+        if (replica instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
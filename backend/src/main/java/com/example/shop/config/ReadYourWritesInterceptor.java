@@ -0,0 +1,88 @@
+package com.example.shop.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реплика отстаёт от основной БД, поэтому сразу после изменяющего запроса
+ * (POST/PUT/DELETE/...) чтения этого же пользователя какое-то время идут
+ * на основную БД — иначе он может не увидеть свою же запись.
+ */
+@Component
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    private final long windowNanos;
+
+    // username -> момент (System.nanoTime), до которого читаем с основной БД
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWritesInterceptor(
+            @Value("${app.datasource.read-your-writes-window:5s}") Duration window
+    ) {
+        this.windowNanos = window.toNanos();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String username = currentUsername();
+
+        if (isWrite(request)) {
+            // Репозитории Spring Data читают в read-only транзакциях, поэтому
+            // весь пишущий запрос целиком закрепляем за основной БД
+            ReadWriteRoutingDataSource.pinToPrimary(true);
+            if (username != null) {
+                // Отмечаем заранее, чтобы параллельные чтения этого пользователя тоже шли на основную БД
+                pinnedUntil.put(username, System.nanoTime() + windowNanos);
+            }
+        } else if (username != null) {
+            Long until = pinnedUntil.get(username);
+            if (until != null) {
+                if (System.nanoTime() - until < 0) {
+                    ReadWriteRoutingDataSource.pinToPrimary(true);
+                } else {
+                    pinnedUntil.remove(username, until);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        String username = currentUsername();
+        if (username != null && isWrite(request)) {
+            // Окно отсчитываем от завершения записи
+            pinnedUntil.put(username, System.nanoTime() + windowNanos);
+            if (pinnedUntil.size() > CLEANUP_THRESHOLD) {
+                long now = System.nanoTime();
+                pinnedUntil.values().removeIf(until -> now - until >= 0);
+            }
+        }
+        ReadWriteRoutingDataSource.pinToPrimary(false);
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method));
+    }
+
+    private static String currentUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return auth.getName();
+    }
+}
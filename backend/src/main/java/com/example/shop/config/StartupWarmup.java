@@ -0,0 +1,140 @@
+package com.example.shop.config;
+
+import com.example.shop.auth.JwtService;
+import com.example.shop.product.ProductRepository;
+import com.example.shop.product.ProductSummary;
+import com.example.shop.user.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Прогрев перед тем, как экземпляр объявит себя готовым (/actuator/health/readiness).
+ * <p>
+ * Раннеры выполняются до ApplicationReadyEvent, а readiness переключается только после него,
+ * поэтому балансировщик не пришлёт трафик, пока прогрев не закончится. Прогрев гоняет
+ * по localhost настоящие запросы каталога (список, карточка с fields=, дельта, «с этим покупают»),
+ * часть из них — с подписанным JWT несуществующего пользователя: так прогреваются
+ * фильтр безопасности, разбор токена, Hibernate и сериализация JSON, а не только отдельные классы.
+ * Всё только на чтение; ошибки прогрева не мешают старту.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    // Такого пользователя нет: фильтр разберёт токен, не найдёт его и пропустит запрос анонимным
+    private static final User WARMUP_USER = new User(null, "warmup@localhost", "", Set.of("ROLE_USER"));
+
+    private final WebServerApplicationContext context;
+    private final ProductRepository products;
+    private final JwtService jwtService;
+    private final boolean enabled;
+    private final int requests;
+    private final Duration maxDuration;
+
+    private volatile long warmupMillis;
+
+    public StartupWarmup(
+            WebServerApplicationContext context,
+            ProductRepository products,
+            JwtService jwtService,
+            @Value("${app.startup.warmup.enabled:true}") boolean enabled,
+            @Value("${app.startup.warmup.requests:300}") int requests,
+            @Value("${app.startup.warmup.max-duration:20s}") Duration maxDuration
+    ) {
+        this.context = context;
+        this.products = products;
+        this.jwtService = jwtService;
+        this.enabled = enabled;
+        this.requests = requests;
+        this.maxDuration = maxDuration;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || requests <= 0) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + maxDuration.toNanos();
+        int sent = 0;
+        int failed = 0;
+        try {
+            List<String> paths = warmupPaths();
+            String token = jwtService.generateToken(WARMUP_USER).value();
+            String base = "http://127.0.0.1:" + context.getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(2))
+                    .build();
+
+            while (sent < requests && System.nanoTime() < deadline) {
+                String path = paths.get(sent % paths.size());
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path))
+                        .timeout(Duration.ofSeconds(5))
+                        .header("Accept", "application/json");
+                // Через раз с токеном, чтобы прогреть и анонимный, и JWT-путь фильтра
+                if (sent % 2 == 1) {
+                    request.header("Authorization", "Bearer " + token);
+                }
+                HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 500) {
+                    failed++;
+                }
+                sent++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Прогрев прерван после {} запросов", sent, e);
+        }
+        warmupMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        log.info("Прогрев: {} запросов за {} мс, ошибок сервера: {}", sent, warmupMillis, failed);
+    }
+
+    private List<String> warmupPaths() {
+        List<Long> ids = products.findAllSummaries().stream()
+                .limit(5)
+                .map(ProductSummary::id)
+                .toList();
+
+        List<String> paths = new ArrayList<>();
+        paths.add("/api/products");
+        paths.add("/api/products?fields=id,name,price");
+        paths.add("/api/products/changes?since=0&limit=100");
+        for (Long id : ids) {
+            paths.add("/api/products/" + id);
+            paths.add("/api/products/" + id + "?fields=id,name,price,stock");
+            paths.add("/api/products/" + id + "/related");
+        }
+        return paths;
+    }
+
+    /**
+     * Время от старта JVM до готовности — то, что реально ждёт автоскейлер.
+     */
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC) {
+            log.info("Готов принимать трафик через {} мс после старта JVM (из них прогрев {} мс)",
+                    ManagementFactory.getRuntimeMXBean().getUptime(), warmupMillis);
+        }
+    }
+}
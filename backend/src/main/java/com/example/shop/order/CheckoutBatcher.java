@@ -0,0 +1,452 @@
+package com.example.shop.order;
+
+import com.example.shop.analytics.SalesRollups;
+import com.example.shop.cart.CartItem;
+import com.example.shop.cart.CartItemRepository;
+import com.example.shop.cart.CartStore;
+import com.example.shop.config.ReadWriteRoutingDataSource;
+import com.example.shop.outbox.OrderOutbox;
+import com.example.shop.pricing.PriceQuote;
+import com.example.shop.pricing.PricingEngine;
+import com.example.shop.product.Product;
+import com.example.shop.product.ProductRepository;
+import com.example.shop.user.User;
+import com.example.shop.user.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетное оформление заказов для распродаж ({@code app.checkout.mode=batched}).
+ * <p>
+ * Запросы кладутся в очередь и сразу получают заявку со статусом PENDING.
+ * Единственный поток-писатель забирает заявки пачками (до {@code maxBatchSize}
+ * штук или пока не пройдёт {@code maxWait}) и оформляет всю пачку в одной
+ * транзакции: блокирует нужные товары один раз, списывает остатки по порядку
+ * заявок, вставляет заказы и удаляет оформленные позиции корзин. Позиции,
+ * на которые не хватило остатка, отклоняются, остальные оформляются.
+ * <p>
+ * Вместо сотен коротких транзакций, конкурирующих за одни и те же строки
+ * products, получается одна транзакция и один коммит на пачку.
+ * <p>
+ * Заявки хранятся в таблице checkout_tickets (см. миграцию V14): итог пишется
+ * транзакцией пачки, поэтому статус виден с любого экземпляра и после рестарта.
+ * Очередь же — в памяти: заявки упавшего экземпляра через {@code ticketTtl}
+ * помечаются FAILED.
+ */
+@Component
+public class CheckoutBatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckoutBatcher.class);
+
+    private final CartItemRepository cartItems;
+    private final CartStore cartStore;
+    private final ProductRepository products;
+    private final OrderRepository orders;
+    private final OrderItemRepository orderItems;
+    private final UserRepository users;
+    private final PricingEngine pricingEngine;
+    private final SalesRollups salesRollups;
+    private final OrderOutbox outbox;
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate tx;
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long ticketTtlMillis;
+
+    private final BlockingQueue<CheckoutTicket> queue;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public CheckoutBatcher(
+            CartItemRepository cartItems,
+            CartStore cartStore,
+            ProductRepository products,
+            OrderRepository orders,
+            OrderItemRepository orderItems,
+            UserRepository users,
+            PricingEngine pricingEngine,
+            SalesRollups salesRollups,
+            OrderOutbox outbox,
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.checkout.mode:sync}") String mode,
+            @Value("${app.checkout.batch.max-size:200}") int maxBatchSize,
+            @Value("${app.checkout.batch.max-wait:20ms}") Duration maxWait,
+            @Value("${app.checkout.batch.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.checkout.batch.ticket-ttl:10m}") Duration ticketTtl
+    ) {
+        this.cartItems = cartItems;
+        this.cartStore = cartStore;
+        this.products = products;
+        this.orders = orders;
+        this.orderItems = orderItems;
+        this.users = users;
+        this.pricingEngine = pricingEngine;
+        this.salesRollups = salesRollups;
+        this.outbox = outbox;
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.enabled = "batched".equals(mode);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.ticketTtlMillis = ticketTtl.toMillis();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ставит заказ в очередь. Пусто — очередь переполнена.
+     */
+    public Optional<CheckoutTicket> submit(String username, CreateOrderRequest request) {
+        if (!running) {
+            return Optional.empty();
+        }
+        CheckoutTicket ticket = new CheckoutTicket(UUID.randomUUID().toString(), username, request);
+        // Строка появляется до постановки в очередь: итог пачки пишется в неё
+        jdbc.update("insert into checkout_tickets (id, username, status) values (?, ?, 'PENDING')",
+                ticket.getId(), username);
+        if (!queue.offer(ticket)) {
+            jdbc.update("delete from checkout_tickets where id = ?", ticket.getId());
+            return Optional.empty();
+        }
+        return Optional.of(ticket);
+    }
+
+    public Optional<CheckoutTicket> find(String ticketId, String username) {
+        return jdbc.query("""
+                        select status, order_id, total_price, message, rejected_lines::text
+                        from checkout_tickets
+                        where id = ? and username = ?
+                        """,
+                (rs, rowNum) -> new CheckoutTicket(ticketId, username, null,
+                        CheckoutTicket.Status.valueOf(rs.getString("status")),
+                        rs.getObject("order_id", Long.class),
+                        rs.getBigDecimal("total_price"),
+                        rs.getString("message"),
+                        readRejected(rs.getString("rejected_lines"))),
+                ticketId, username).stream().findFirst();
+    }
+
+    // ---------- поток-писатель ----------
+
+    private void runWorker() {
+        List<CheckoutTicket> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                CheckoutTicket first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Добираем пачку: всё, что уже в очереди, плюс то, что успеет прийти за maxWait
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    CheckoutTicket next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Ошибка пакетного оформления заказов", e);
+                fail(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private record Outcome(CheckoutTicket ticket, User user, Order order,
+                           List<CheckoutTicket.RejectedLine> rejected, String message,
+                           List<Long> orderedProductIds) { }
+
+    private void process(List<CheckoutTicket> batch) {
+        // Отложенные правки корзин пишем заранее, отдельными транзакциями:
+        // откат пакета не должен терять то, что пользователь положил в корзину
+        Map<CheckoutTicket, User> buyers = new LinkedHashMap<>();
+        for (CheckoutTicket ticket : batch) {
+            try {
+                User user = users.findByUsername(ticket.getUsername()).orElseThrow();
+                cartStore.flush(user);
+                buyers.put(ticket, user);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось подготовить корзину к оформлению", e);
+                fail(List.of(ticket));
+            }
+        }
+        if (buyers.isEmpty()) {
+            return;
+        }
+
+        List<Outcome> outcomes;
+        try {
+            outcomes = tx.execute(status -> apply(buyers));
+        } catch (RuntimeException e) {
+            if (buyers.size() == 1) {
+                log.warn("Не удалось оформить заказ", e);
+                fail(buyers.keySet());
+                return;
+            }
+            // Одна проблемная заявка не должна ронять всю пачку — повторяем по одной
+            log.warn("Пачка из {} заказов откатилась, оформляем по одному", buyers.size(), e);
+            for (CheckoutTicket ticket : buyers.keySet()) {
+                process(List.of(ticket));
+            }
+            return;
+        }
+
+        for (Outcome outcome : outcomes) {
+            if (outcome.order() != null) {
+                cartStore.afterCheckout(outcome.user(), outcome.orderedProductIds());
+            }
+        }
+    }
+
+    // Итоги заявок пишутся в транзакции пачки: заявка COMPLETED только вместе с заказом
+    private void recordOutcomes(List<Outcome> outcomes) {
+        jdbc.batchUpdate("""
+                        update checkout_tickets
+                        set status = ?, order_id = ?, total_price = ?, message = ?, rejected_lines = ?::jsonb,
+                            completed_at = now()
+                        where id = ?
+                        """,
+                outcomes, outcomes.size(), (ps, outcome) -> {
+                    Order order = outcome.order();
+                    if (order != null) {
+                        ps.setString(1, CheckoutTicket.Status.COMPLETED.name());
+                        ps.setObject(2, order.getId());
+                        ps.setBigDecimal(3, order.getTotalPrice());
+                        ps.setString(4, outcome.rejected().isEmpty() ? null
+                                : "Часть позиций не оформлена: недостаточно товара на складе");
+                    } else {
+                        ps.setString(1, CheckoutTicket.Status.REJECTED.name());
+                        ps.setNull(2, Types.BIGINT);
+                        ps.setBigDecimal(3, null);
+                        ps.setString(4, outcome.message());
+                    }
+                    ps.setString(5, writeRejected(outcome.rejected()));
+                    ps.setString(6, outcome.ticket().getId());
+                });
+    }
+
+    // Вызывается и из обработки ошибок, поэтому сама не бросает; итог, уже записанный пачкой, не трогает
+    private void fail(Collection<CheckoutTicket> failed) {
+        try {
+            jdbc.update("""
+                            update checkout_tickets set status = 'FAILED', message = ?, completed_at = now()
+                            where id = any(?) and status = 'PENDING'
+                            """,
+                    ps -> {
+                        ps.setString(1, "Не удалось оформить заказ");
+                        ps.setArray(2, ps.getConnection().createArrayOf("varchar",
+                                failed.stream().map(CheckoutTicket::getId).toArray()));
+                    });
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отметить {} заявок как неоформленные", failed.size(), e);
+        }
+    }
+
+    private String writeRejected(List<CheckoutTicket.RejectedLine> rejected) {
+        try {
+            return objectMapper.writeValueAsString(rejected);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сохранить итог заявки", e);
+        }
+    }
+
+    private List<CheckoutTicket.RejectedLine> readRejected(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() { });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Повреждён итог заявки", e);
+        }
+    }
+
+    // Выполняется в одной транзакции на всю пачку
+    private List<Outcome> apply(Map<CheckoutTicket, User> buyers) {
+        Map<CheckoutTicket, List<CartItem>> selected = new LinkedHashMap<>();
+        List<Outcome> outcomes = new ArrayList<>(buyers.size());
+        Set<Long> productIds = new HashSet<>();
+        // Строки корзин, уже взятые заявками этой пачки: две заявки одного пользователя
+        // не должны оформить одну и ту же строку дважды
+        Set<Long> claimed = new HashSet<>();
+
+        buyers.forEach((ticket, user) -> {
+            List<CartItem> userItems = cartItems.findByUser(user).stream()
+                    .filter(ci -> !claimed.contains(ci.getId()))
+                    .toList();
+            if (userItems.isEmpty()) {
+                outcomes.add(new Outcome(ticket, user, null, List.of(), "Корзина пуста", List.of()));
+                return;
+            }
+            List<CartItem> items = CreateOrderRequest.select(ticket.getRequest(), userItems);
+            if (items.isEmpty()) {
+                outcomes.add(new Outcome(ticket, user, null, List.of(),
+                        "Не выбрано ни одной позиции для оформления", List.of()));
+                return;
+            }
+            selected.put(ticket, items);
+            items.forEach(ci -> {
+                claimed.add(ci.getId());
+                productIds.add(ci.getProduct().getId());
+            });
+        });
+
+        // Одна блокировка строк products на всю пачку
+        Map<Long, Product> locked = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            products.lockAllById(productIds).forEach(p -> locked.put(p.getId(), p));
+        }
+
+        List<Order> newOrders = new ArrayList<>();
+        List<OrderItem> newItems = new ArrayList<>();
+        List<CartItem> ordered = new ArrayList<>();
+        Instant now = Instant.now();
+
+        selected.forEach((ticket, items) -> {
+            User user = buyers.get(ticket);
+            List<CartItem> accepted = new ArrayList<>();
+            List<CheckoutTicket.RejectedLine> rejected = new ArrayList<>();
+
+            // Заявки обрабатываются в порядке поступления, остаток списывается по мере оформления
+            for (CartItem ci : items) {
+                Product product = locked.get(ci.getProduct().getId());
+                Integer qty = ci.getQuantity();
+                if (product == null || qty == null || qty <= 0) {
+                    continue;
+                }
+
+                Integer stock = product.getStock();
+                if (stock != null && stock < qty) {
+                    rejected.add(new CheckoutTicket.RejectedLine(product.getId(), product.getName(), qty));
+                    continue;
+                }
+                if (stock != null) {
+                    product.setStock(stock - qty);
+                }
+                accepted.add(ci);
+            }
+
+            if (accepted.isEmpty()) {
+                outcomes.add(new Outcome(ticket, user, null, rejected,
+                        "Недостаточно товара на складе", List.of()));
+                return;
+            }
+
+            CreateOrderRequest request = ticket.getRequest();
+            PriceQuote quote = pricingEngine.quote(accepted, request != null ? request.couponCode() : null);
+
+            Order order = new Order();
+            order.setUser(user);
+            order.setCreatedAt(now);
+            order.setStatus("NEW");
+            order.setTotalPrice(quote.total());
+            newOrders.add(order);
+            accepted.forEach(ci -> newItems.add(OrderItem.from(order, ci)));
+            ordered.addAll(accepted);
+
+            outcomes.add(new Outcome(ticket, user, order, rejected, null,
+                    accepted.stream().map(ci -> ci.getProduct().getId()).toList()));
+        });
+
+        orders.saveAll(newOrders);
+        orderItems.saveAll(newItems);
+        salesRollups.record(newOrders, newItems);
+        outbox.ordersCreated(newOrders, newItems);
+        cartItems.deleteAll(ordered);
+        recordOutcomes(outcomes);
+        return outcomes;
+    }
+
+    @Scheduled(fixedDelayString = "${app.checkout.batch.cleanup-interval:PT1M}")
+    public void removeExpiredTickets() {
+        try {
+            jdbc.update("delete from checkout_tickets where completed_at < now() - ? * interval '1 millisecond'",
+                    ticketTtlMillis);
+            // Очередь живёт в памяти: заявки упавшего экземпляра так и остались бы PENDING
+            jdbc.update("""
+                            update checkout_tickets set status = 'FAILED', message = ?, completed_at = now()
+                            where status = 'PENDING' and created_at < now() - ? * interval '1 millisecond'
+                            """,
+                    "Не удалось оформить заказ", ticketTtlMillis);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить истёкшие заявки на оформление", e);
+        }
+    }
+
+    // ---------- жизненный цикл ----------
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        // Остатки и корзины проверяются по основной БД, а не по отстающей реплике
+        worker = new Thread(ReadWriteRoutingDataSource.pinnedToPrimary(this::runWorker), "checkout-batcher");
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // Поток дорабатывает всё, что уже в очереди, и завершается
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Останавливаемся после веб-сервера, но раньше хранилища корзин
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.shop.order;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Заявка на оформление заказа в пакетном режиме (см. {@link CheckoutBatcher}).
+ * Клиент получает её сразу со статусом PENDING и опрашивает до результата.
+ * Статус хранится в таблице checkout_tickets, так что опрашивать можно любой экземпляр.
+ */
+public class CheckoutTicket {
+
+    public enum Status {
+        PENDING,
+        COMPLETED,
+        REJECTED,
+        FAILED
+    }
+
+    public record RejectedLine(Long productId, String productName, Integer quantity) { }
+
+    private final String id;
+    private final String username;
+    private final CreateOrderRequest request;
+
+    private final Status status;
+    private final Long orderId;
+    private final BigDecimal totalPrice;
+    private final String message;
+    private final List<RejectedLine> rejectedLines;
+
+    CheckoutTicket(String id, String username, CreateOrderRequest request) {
+        this(id, username, request, Status.PENDING, null, null, null, List.of());
+    }
+
+    CheckoutTicket(String id, String username, CreateOrderRequest request, Status status, Long orderId,
+                   BigDecimal totalPrice, String message, List<RejectedLine> rejectedLines) {
+        this.id = id;
+        this.username = username;
+        this.request = request;
+        this.status = status;
+        this.orderId = orderId;
+        this.totalPrice = totalPrice;
+        this.message = message;
+        this.rejectedLines = rejectedLines;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @JsonIgnore
+    public String getUsername() {
+        return username;
+    }
+
+    @JsonIgnore
+    public CreateOrderRequest getRequest() {
+        return request;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public BigDecimal getTotalPrice() {
+        return totalPrice;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public List<RejectedLine> getRejectedLines() {
+        return rejectedLines;
+    }
+}
@@ -1,7 +1,28 @@
 package com.example.shop.order;
 
+import com.example.shop.cart.CartItem;
+
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public record CreateOrderRequest(
-        List<Long> cartItemIds
-) { }
+        List<Long> cartItemIds,
+        String couponCode
+) {
+
+    /**
+     * Позиции корзины, выбранные для оформления. Без списка id — вся корзина.
+     */
+    public static List<CartItem> select(CreateOrderRequest request, List<CartItem> userItems) {
+        if (request == null || request.cartItemIds() == null || request.cartItemIds().isEmpty()) {
+            return userItems;
+        }
+
+        Set<Long> ids = request.cartItemIds().stream().collect(Collectors.toSet());
+        // Позиции, ещё не записанные в БД, фронт видел с id = -productId
+        return userItems.stream()
+                .filter(ci -> ids.contains(ci.getId()) || ids.contains(-ci.getProduct().getId()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.shop.order;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Ответы на запросы с заголовком {@code Idempotency-Key}.
+ * <p>
+ * Ключи хранятся в таблице idempotency_keys (см. миграцию V12), общей для всех экземпляров,
+ * и привязаны к пользователю. Первый запрос с ключом вставляет строку (первичный ключ не даёт
+ * второму узлу взять тот же ключ), выполняется, и его ответ запоминается на {@code app.idempotency.ttl}.
+ * Ответ успешного оформления записывается в той же транзакции, что и заказ
+ * ({@link #completeInTransaction}), так что заказ без сохранённого ответа не появляется.
+ * <p>
+ * Повторы, пришедшие во время выполнения, ждут результата первого: на том же экземпляре —
+ * в памяти, на другом — опрашивая строку. Пришедшие позже сразу получают сохранённый ответ
+ * с заголовком {@code Idempotent-Replayed: true}. Если выполнявший узел упал, ключ освобождается
+ * через {@code app.idempotency.lease}.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_MILLIS = 100;
+    private static final TypeReference<Map<String, List<String>>> HEADERS = new TypeReference<>() { };
+
+    // Ключ, который выполняет текущий поток: его ответ сохраняет транзакция оформления
+    private static final ThreadLocal<Claim> CURRENT = new ThreadLocal<>();
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    // Сохранённый JSON отдаётся повторно как есть: цены остаются 11.00, а не 11.0
+    private final ObjectReader storedBody;
+    private final long ttlMillis;
+    private final long leaseMillis;
+    private final long waitMillis;
+
+    // Запросы, выполняющиеся на этом экземпляре: повторы ждут их здесь, не опрашивая БД
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyStore(
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            @Value("${app.idempotency.ttl:24h}") Duration ttl,
+            @Value("${app.idempotency.lease:1m}") Duration lease,
+            @Value("${app.idempotency.wait-timeout:30s}") Duration waitTimeout
+    ) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.storedBody = objectMapper.reader()
+                .with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+                .without(JsonNodeFeature.STRIP_TRAILING_BIGDECIMAL_ZEROES);
+        this.ttlMillis = ttl.toMillis();
+        this.leaseMillis = lease.toMillis();
+        this.waitMillis = waitTimeout.toMillis();
+    }
+
+    private record Claim(String owner, String key, UUID id) { }
+
+    private record Stored(String fingerprint, ResponseEntity<?> response) { }
+
+    private static final class InFlight {
+        final String fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+        InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * @param owner       владелец ключа (имя пользователя)
+     * @param key         значение заголовка Idempotency-Key
+     * @param fingerprint отпечаток тела запроса: тот же ключ с другим запросом — ошибка клиента
+     */
+    public ResponseEntity<?> execute(String owner, String key, String fingerprint, Supplier<ResponseEntity<?>> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body("Некорректный " + HEADER);
+        }
+
+        String id = owner + '\n' + key;
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            InFlight mine = new InFlight(fingerprint);
+            InFlight running = inFlight.putIfAbsent(id, mine);
+
+            if (running != null) {
+                if (!running.fingerprint.equals(fingerprint)) {
+                    return mismatch();
+                }
+                try {
+                    long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+                    return replayed(running.response.get(remaining, TimeUnit.MILLISECONDS));
+                } catch (ExecutionException e) {
+                    // Первый запрос упал и ключ освобождён — пробуем выполнить сами
+                    continue;
+                } catch (TimeoutException e) {
+                    return stillRunning();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+                }
+            }
+
+            try {
+                ResponseEntity<?> response = claimOrReplay(owner, key, fingerprint, action, deadline);
+                mine.response.complete(response);
+                return response;
+            } catch (RuntimeException | Error e) {
+                mine.response.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(id, mine);
+            }
+        }
+    }
+
+    private ResponseEntity<?> claimOrReplay(String owner, String key, String fingerprint,
+                                            Supplier<ResponseEntity<?>> action, long deadline) {
+        while (true) {
+            Claim claim = new Claim(owner, key, UUID.randomUUID());
+            if (claim(claim, fingerprint)) {
+                return runFirst(claim, action);
+            }
+
+            Stored stored = load(owner, key);
+            if (stored == null) {
+                // Строку только что удалили (истекла или первый запрос упал) — захватываем заново
+                continue;
+            }
+            if (!stored.fingerprint().equals(fingerprint)) {
+                return mismatch();
+            }
+            if (stored.response() != null) {
+                return replayed(stored.response());
+            }
+
+            // Выполняется на другом экземпляре
+            if (System.currentTimeMillis() >= deadline) {
+                return stillRunning();
+            }
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+        }
+    }
+
+    private ResponseEntity<?> runFirst(Claim claim, Supplier<ResponseEntity<?>> action) {
+        ResponseEntity<?> response;
+        CURRENT.set(claim);
+        try {
+            response = action.get();
+        } catch (RuntimeException | Error e) {
+            // Непредвиденную ошибку не запоминаем: повтор должен иметь шанс пройти
+            jdbc.update("delete from idempotency_keys where owner = ? and idem_key = ? and claimed_by = ? and status = 'IN_PROGRESS'",
+                    claim.owner(), claim.key(), claim.id());
+            throw e;
+        } finally {
+            CURRENT.remove();
+        }
+        // Успешное оформление уже сохранило ответ в своей транзакции; остальные ответы
+        // (ошибки проверки, 202 пакетного режима) сохраняются здесь
+        store(claim, response);
+        return response;
+    }
+
+    /**
+     * Сохраняет ответ на ключ, который выполняет текущий поток, в текущей транзакции оформления.
+     * Без ключа ничего не делает. Если ключ успел перейти к другому запросу (lease истёк),
+     * бросает исключение, и транзакция с заказом откатывается.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void completeInTransaction(ResponseEntity<?> response) {
+        Claim claim = CURRENT.get();
+        if (claim != null && store(claim, response) == 0) {
+            throw new IllegalStateException(HEADER + " уже выполняет другой запрос");
+        }
+    }
+
+    private boolean claim(Claim claim, String fingerprint) {
+        // Истёкшую строку и строку упавшего узла (lease прошёл) можно занять заново
+        return jdbc.update("""
+                        insert into idempotency_keys (owner, idem_key, fingerprint, status, claimed_by, locked_until, expires_at)
+                        values (?, ?, ?, 'IN_PROGRESS', ?, now() + ? * interval '1 millisecond', now() + ? * interval '1 millisecond')
+                        on conflict (owner, idem_key) do update set
+                            fingerprint = excluded.fingerprint,
+                            status = excluded.status,
+                            claimed_by = excluded.claimed_by,
+                            locked_until = excluded.locked_until,
+                            expires_at = excluded.expires_at,
+                            response_status = null,
+                            response_headers = null,
+                            response_body = null,
+                            response_json = null
+                        where idempotency_keys.expires_at < now()
+                           or (idempotency_keys.status = 'IN_PROGRESS' and idempotency_keys.locked_until < now())
+                        """,
+                claim.owner(), claim.key(), fingerprint, claim.id(), leaseMillis, ttlMillis) == 1;
+    }
+
+    private int store(Claim claim, ResponseEntity<?> response) {
+        Object body = response.getBody();
+        boolean json = body != null && !(body instanceof String);
+        try {
+            return jdbc.update("""
+                            update idempotency_keys set
+                                status = 'DONE',
+                                response_status = ?,
+                                response_headers = ?::jsonb,
+                                response_body = ?,
+                                response_json = ?,
+                                expires_at = now() + ? * interval '1 millisecond'
+                            where owner = ? and idem_key = ? and claimed_by = ? and status = 'IN_PROGRESS'
+                            """,
+                    response.getStatusCode().value(),
+                    objectMapper.writeValueAsString(response.getHeaders()),
+                    json ? objectMapper.writeValueAsString(body) : (String) body,
+                    json,
+                    ttlMillis,
+                    claim.owner(), claim.key(), claim.id());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сохранить ответ для " + HEADER, e);
+        }
+    }
+
+    private Stored load(String owner, String key) {
+        List<Stored> rows = jdbc.query("""
+                        select fingerprint, status, response_status, response_headers::text, response_body, response_json
+                        from idempotency_keys
+                        where owner = ? and idem_key = ? and expires_at >= now()
+                        """,
+                (rs, i) -> {
+                    if (!"DONE".equals(rs.getString("status"))) {
+                        return new Stored(rs.getString("fingerprint"), null);
+                    }
+                    try {
+                        HttpHeaders headers = new HttpHeaders();
+                        headers.putAll(objectMapper.readValue(rs.getString("response_headers"), HEADERS));
+                        String body = rs.getString("response_body");
+                        Object value = body != null && rs.getBoolean("response_json") ? storedBody.readTree(body) : body;
+                        return new Stored(rs.getString("fingerprint"),
+                                ResponseEntity.status(rs.getInt("response_status")).headers(headers).body(value));
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException("Повреждён сохранённый ответ для " + HEADER, e);
+                    }
+                },
+                owner, key);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private static ResponseEntity<?> replayed(ResponseEntity<?> stored) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(stored.getHeaders());
+        headers.set("Idempotent-Replayed", "true");
+        return ResponseEntity.status(stored.getStatusCode())
+                .headers(headers)
+                .body(stored.getBody());
+    }
+
+    private static ResponseEntity<?> mismatch() {
+        return ResponseEntity.unprocessableEntity()
+                .body(HEADER + " уже использован с другим запросом");
+    }
+
+    private static ResponseEntity<?> stillRunning() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Запрос с этим " + HEADER + " ещё выполняется");
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval:PT1M}")
+    public void removeExpired() {
+        try {
+            jdbc.update("delete from idempotency_keys where expires_at < now()");
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить истёкшие ключи {}", HEADER, e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.shop.order;
+
+import com.example.shop.user.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Архив заказов за отсоединённые месяцы (выгружает {@link OrderArchiver}).
+ * <p>
+ * На месяц три файла в {@code dir}: orders-YYYY-MM.ndjson.gz — заказы с позициями,
+ * по одной JSON-строке, отсортированные по (userId, id), orders-YYYY-MM.users —
+ * отсортированные id пользователей, у которых в этом месяце есть заказы, и
+ * orders-YYYY-MM.offsets — смещения их блоков в файле заказов. Блок каждого пользователя —
+ * отдельный gzip-член, так что история читает с диска только свои строки, а не месяц целиком.
+ * Списки пользователей и смещения держатся в памяти, поэтому заглядываем только в архивы
+ * месяцев, где у пользователя действительно есть заказы. Архивы без .offsets (выгруженные
+ * до их появления) читаются с начала файла.
+ * <p>
+ * Папка перечитывается раз в app.orders.archive.rescan-interval: если она общая для нескольких
+ * экземпляров, архив, выгруженный другим экземпляром, тоже становится виден.
+ */
+@Component
+public class OrderArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchive.class);
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String DATA_SUFFIX = ".ndjson.gz";
+    private static final String USERS_SUFFIX = ".users";
+    private static final String OFFSETS_SUFFIX = ".offsets";
+
+    public record ArchivedItem(Long productId, Integer quantity, BigDecimal price) { }
+
+    public record ArchivedOrder(Long userId, Long id, Instant createdAt, BigDecimal totalPrice,
+                                String status, List<ArchivedItem> items) {
+
+        public Order toOrder(User user) {
+            return new Order(id, user, createdAt, totalPrice, status);
+        }
+    }
+
+    /**
+     * @param users   отсортированные id пользователей
+     * @param offsets начало блока users[i] в файле заказов, последний элемент — конец файла;
+     *                null для архивов без .offsets
+     */
+    private record Month(long[] users, long[] offsets) { }
+
+    private final Path dir;
+    private final ObjectMapper objectMapper;
+
+    private volatile NavigableMap<YearMonth, Month> months = Collections.emptyNavigableMap();
+
+    public OrderArchive(
+            ObjectMapper objectMapper,
+            @Value("${app.orders.archive.dir:archive/orders}") String dir
+    ) {
+        this.objectMapper = objectMapper;
+        this.dir = Paths.get(dir);
+        // История заказов должна видеть архив с первого же запроса
+        rescan();
+    }
+
+    Path dataFile(YearMonth month) {
+        return dir.resolve("orders-" + month.format(MONTH) + DATA_SUFFIX);
+    }
+
+    Path usersFile(YearMonth month) {
+        return dir.resolve("orders-" + month.format(MONTH) + USERS_SUFFIX);
+    }
+
+    Path offsetsFile(YearMonth month) {
+        return dir.resolve("orders-" + month.format(MONTH) + OFFSETS_SUFFIX);
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    static String linePrefix(long userId) {
+        return "{\"userId\":" + userId + ",";
+    }
+
+    /**
+     * Конец последнего месяца в архиве: заказов раньше этого момента в orders может уже не быть.
+     */
+    public Optional<Instant> archivedUntil() {
+        NavigableMap<YearMonth, Month> archived = months;
+        return archived.isEmpty()
+                ? Optional.empty()
+                : Optional.of(OrderPartitions.end(archived.lastKey()));
+    }
+
+    /**
+     * Заказы пользователя из архива, от новых месяцев к старым.
+     */
+    public List<ArchivedOrder> findByUser(long userId) {
+        List<ArchivedOrder> result = new ArrayList<>();
+        for (Map.Entry<YearMonth, Month> month : months.descendingMap().entrySet()) {
+            int index = Arrays.binarySearch(month.getValue().users(), userId);
+            if (index < 0) {
+                continue;
+            }
+            try {
+                long[] offsets = month.getValue().offsets();
+                if (offsets != null) {
+                    readBlock(dataFile(month.getKey()), offsets[index], offsets[index + 1], result);
+                } else {
+                    scan(dataFile(month.getKey()), userId, result);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать архив заказов за " + month.getKey(), e);
+            }
+        }
+        return result;
+    }
+
+    // Блок пользователя — самостоятельный gzip-член: читаем только его байты
+    private void readBlock(Path file, long from, long to, List<ArchivedOrder> result) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(Math.toIntExact(to - from));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (block.hasRemaining()) {
+                if (channel.read(block, from + block.position()) < 0) {
+                    throw new EOFException("Архив " + file + " короче, чем указано в " + OFFSETS_SUFFIX);
+                }
+            }
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(block.array())), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.add(objectMapper.readValue(line, ArchivedOrder.class));
+            }
+        }
+    }
+
+    private void scan(Path file, long userId, List<ArchivedOrder> result) throws IOException {
+        String prefix = linePrefix(userId);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024), StandardCharsets.UTF_8))) {
+            boolean found = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Строки отсортированы по пользователю: после его блока дальше читать незачем
+                if (line.startsWith(prefix)) {
+                    found = true;
+                    result.add(objectMapper.readValue(line, ArchivedOrder.class));
+                } else if (found) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Сохраняет список пользователей месяца и смещения их блоков (через временные файлы)
+     * и делает месяц видимым для чтения. Вызывается после того, как файл с заказами уже на диске.
+     */
+    synchronized void register(YearMonth month, long[] sortedUserIds, long[] offsets) throws IOException {
+        writeLongs(offsetsFile(month), offsets);
+        // .users появляется последним: по нему rescan узнаёт, что месяц выгружен целиком
+        writeLongs(usersFile(month), sortedUserIds);
+
+        NavigableMap<YearMonth, Month> next = new TreeMap<>(months);
+        next.put(month, new Month(sortedUserIds, offsets));
+        months = Collections.unmodifiableNavigableMap(next);
+    }
+
+    private static void writeLongs(Path target, long[] values) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(values.length);
+            for (long value : values) {
+                out.writeLong(value);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.archive.rescan-interval:PT5M}")
+    public synchronized void rescan() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        NavigableMap<YearMonth, Month> current = months;
+        NavigableMap<YearMonth, Month> next = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "orders-*" + USERS_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                YearMonth month;
+                try {
+                    month = YearMonth.parse(name.substring("orders-".length(), name.length() - USERS_SUFFIX.length()), MONTH);
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                Month known = current.get(month);
+                if (known == null) {
+                    Path offsets = offsetsFile(month);
+                    known = new Month(readLongs(file), Files.exists(offsets) ? readLongs(offsets) : null);
+                }
+                next.put(month, known);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось перечитать архив заказов в {}", dir.toAbsolutePath(), e);
+            return;
+        }
+        if (!next.keySet().equals(current.keySet())) {
+            log.info("Архив заказов: {} мес. в {}", next.size(), dir.toAbsolutePath());
+        }
+        months = Collections.unmodifiableNavigableMap(next);
+    }
+
+    private static long[] readLongs(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long[] values = new long[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readLong();
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.shop.order;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка старых месяцев заказов в архив: секции orders, закончившиеся раньше, чем {@code retention}
+ * назад, пишутся в {@link OrderArchive} (NDJSON под gzip) и отсоединяются, так что горячая
+ * таблица и её индексы остаются размером в несколько месяцев.
+ * <p>
+ * Месяц выгружается одной транзакцией: секция блокируется от записи, заказы с позициями
+ * пишутся во временный файл, он сбрасывается на диск, перечитывается для сверки числа строк
+ * и переименовывается; затем удаляются позиции этих заказов, секция отсоединяется и удаляется.
+ * Упадёт что угодно до коммита — в БД всё остаётся, а повторный проход перезапишет файл
+ * (история заказов до этого момента склеивает архив и БД по id). Отсоединение на короткое время
+ * блокирует всю orders, поэтому ждёт блокировку не дольше {@code lockTimeout}, иначе месяц
+ * переносится на следующий проход.
+ * <p>
+ * Несколько экземпляров не выгружают одновременно (advisory lock). Итоги продаж за архивные
+ * месяцы в sales_daily остаются. Метрика {@code orders.archive.rows} — выгружено заказов.
+ */
+@Component
+public class OrderArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiver.class);
+
+    // Ключ pg_try_advisory_xact_lock: один архиватор на все экземпляры.
+    // Пересчёт итогов продаж берёт его разделяемым, чтобы месяц не ушёл в архив посреди пересчёта дня
+    public static final long LOCK_KEY = 0x6f72_6465_7273_4152L;
+
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate streaming;
+    private final TransactionTemplate tx;
+    private final OrderPartitions partitions;
+    private final OrderArchive archive;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Duration retention;
+    private final Duration lockTimeout;
+    private final Counter archivedRows;
+
+    public OrderArchiver(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            OrderPartitions partitions,
+            OrderArchive archive,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.orders.archive.enabled:true}") boolean enabled,
+            @Value("${app.orders.archive.retention:365d}") Duration retention,
+            @Value("${app.orders.archive.lock-timeout:5s}") Duration lockTimeout
+    ) {
+        this.jdbc = jdbc;
+        // Заказы месяца читаются курсором, а не целиком в память
+        this.streaming = new JdbcTemplate(jdbc.getDataSource());
+        this.streaming.setFetchSize(1000);
+        this.tx = new TransactionTemplate(transactionManager);
+        this.partitions = partitions;
+        this.archive = archive;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.lockTimeout = lockTimeout;
+        this.archivedRows = Counter.builder("orders.archive.rows")
+                .description("Заказы, выгруженные в архив")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.archive.interval:PT6H}",
+            initialDelayString = "${app.orders.archive.initial-delay:PT10M}")
+    public void archiveOldMonths() {
+        if (!enabled) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(retention);
+        for (YearMonth month : partitions.attached()) {
+            if (OrderPartitions.end(month).isAfter(cutoff)) {
+                break;
+            }
+            try {
+                if (!archive(month)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // Месяцы архивируются по порядку: без этого в архиве была бы дыра
+                log.warn("Не удалось архивировать заказы за {}, повтор в следующий проход", month, e);
+                return;
+            }
+        }
+    }
+
+    private record Export(long rows, long[] userIds, long[] offsets) { }
+
+    /**
+     * @return false, если архивирует другой экземпляр
+     */
+    private boolean archive(YearMonth month) {
+        String table = OrderPartitions.name(month);
+        long startedAt = System.nanoTime();
+        Long rows = tx.execute(status -> {
+            if (!Boolean.TRUE.equals(jdbc.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY))) {
+                return null;
+            }
+            jdbc.execute("set local lock_timeout = '" + lockTimeout.toMillis() + "ms'");
+            // Другой экземпляр мог успеть раньше
+            Boolean attached = jdbc.queryForObject("""
+                    select exists (select 1 from pg_inherits i join pg_class c on c.oid = i.inhrelid
+                                   where i.inhparent = 'orders'::regclass and c.relname = ?)
+                    """, Boolean.class, table);
+            if (!Boolean.TRUE.equals(attached)) {
+                return 0L;
+            }
+            jdbc.execute("lock table " + table + " in share mode");
+            Export export;
+            try {
+                export = export(table, month);
+                archive.register(month, export.userIds(), export.offsets());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            jdbc.update("delete from order_items where order_id in (select id from " + table + ")");
+            jdbc.execute("alter table orders detach partition " + table);
+            jdbc.execute("drop table " + table);
+            return export.rows();
+        });
+        if (rows == null) {
+            return false;
+        }
+        archivedRows.increment(rows);
+        log.info("Заказы за {} выгружены в архив: {} шт. за {} мс", month, rows, (System.nanoTime() - startedAt) / 1_000_000);
+        return true;
+    }
+
+    private Export export(String table, YearMonth month) throws IOException {
+        Path data = archive.dataFile(month);
+        Path tmp = data.resolveSibling(data.getFileName() + ".tmp");
+        Files.createDirectories(archive.dir());
+
+        long[] rows = {0};
+        List<Long> userIds = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             BufferedOutputStream out = new BufferedOutputStream(file, 64 * 1024)) {
+            // Блок каждого пользователя — отдельный gzip-член: история читает его по смещению,
+            // не распаковывая месяц с начала. Склеенные члены — по-прежнему обычный .gz
+            UserBlock[] block = {null};
+            long[] position = {0};
+            streaming.query("""
+                    select o.user_id, o.id, o.created_at, o.total_price, o.status,
+                           coalesce((select json_agg(json_build_object(
+                                        'productId', i.product_id, 'quantity', i.quantity, 'price', i.price) order by i.id)
+                                     from order_items i where i.order_id = o.id), '[]')::text as items
+                    from %s o
+                    order by o.user_id, o.id
+                    """.formatted(table), rs -> {
+                try {
+                    long userId = rs.getLong("user_id");
+                    if (userIds.isEmpty() || userIds.get(userIds.size() - 1) != userId) {
+                        if (block[0] != null) {
+                            position[0] += block[0].writeTo(out);
+                        }
+                        userIds.add(userId);
+                        offsets.add(position[0]);
+                        block[0] = new UserBlock(objectMapper);
+                    }
+                    // Порядок полей важен: архив без .offsets ищет строки пользователя по началу строки
+                    JsonGenerator json = block[0].json;
+                    json.writeStartObject();
+                    json.writeNumberField("userId", userId);
+                    json.writeNumberField("id", rs.getLong("id"));
+                    json.writeStringField("createdAt", rs.getTimestamp("created_at").toInstant().toString());
+                    json.writeNumberField("totalPrice", rs.getBigDecimal("total_price"));
+                    json.writeStringField("status", rs.getString("status"));
+                    json.writeFieldName("items");
+                    json.writeRawValue(rs.getString("items"));
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (block[0] != null) {
+                position[0] += block[0].writeTo(out);
+            }
+            offsets.add(position[0]);
+            out.flush();
+            file.getFD().sync();
+        }
+
+        long written = countLines(tmp);
+        if (written != rows[0]) {
+            throw new IOException("В архиве " + tmp + " " + written + " строк вместо " + rows[0]);
+        }
+        Files.move(tmp, data, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new Export(rows[0],
+                userIds.stream().mapToLong(Long::longValue).toArray(),
+                offsets.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    // Строки одного пользователя, сжатые в отдельный gzip-член
+    private static final class UserBlock {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final JsonGenerator json;
+
+        UserBlock(ObjectMapper objectMapper) throws IOException {
+            json = objectMapper.getFactory().createGenerator(new GZIPOutputStream(bytes));
+            // Без пробела между объектами: каждая строка начинается прямо с '{'
+            json.setRootValueSeparator(null);
+        }
+
+        // Завершает gzip-член и дописывает его в файл; возвращает его размер
+        long writeTo(OutputStream out) throws IOException {
+            json.close();
+            bytes.writeTo(out);
+            return bytes.size();
+        }
+    }
+
+    private static long countLines(Path file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024), StandardCharsets.UTF_8))) {
+            return reader.lines().count();
+        }
+    }
+}
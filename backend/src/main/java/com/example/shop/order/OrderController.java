@@ -1,18 +1,32 @@
 package com.example.shop.order;
 
+import com.example.shop.analytics.SalesRollups;
 import com.example.shop.cart.CartItem;
 import com.example.shop.cart.CartItemRepository;
+import com.example.shop.cart.CartStore;
+import com.example.shop.outbox.OrderOutbox;
+import com.example.shop.pricing.PriceQuote;
+import com.example.shop.pricing.PricingEngine;
 import com.example.shop.product.Product;
 import com.example.shop.product.ProductRepository;
 import com.example.shop.user.User;
 import com.example.shop.user.UserRepository;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.Authentication;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
+import java.net.URI;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -22,20 +36,50 @@ import java.util.stream.Collectors;
 public class OrderController {
 
     private final OrderRepository orders;
+    private final OrderItemRepository orderItems;
     private final CartItemRepository cartItems;
+    private final CartStore cartStore;
     private final UserRepository users;
     private final ProductRepository products;
+    private final IdempotencyStore idempotency;
+    private final CheckoutBatcher checkoutBatcher;
+    private final PricingEngine pricingEngine;
+    private final SalesRollups salesRollups;
+    private final OrderOutbox outbox;
+    private final OrderArchive archive;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
 
     public OrderController(
             OrderRepository orders,
+            OrderItemRepository orderItems,
             CartItemRepository cartItems,
+            CartStore cartStore,
             UserRepository users,
-            ProductRepository products
+            ProductRepository products,
+            IdempotencyStore idempotency,
+            CheckoutBatcher checkoutBatcher,
+            PricingEngine pricingEngine,
+            SalesRollups salesRollups,
+            OrderOutbox outbox,
+            OrderArchive archive,
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager
     ) {
         this.orders = orders;
+        this.orderItems = orderItems;
         this.cartItems = cartItems;
+        this.cartStore = cartStore;
         this.users = users;
         this.products = products;
+        this.idempotency = idempotency;
+        this.checkoutBatcher = checkoutBatcher;
+        this.pricingEngine = pricingEngine;
+        this.salesRollups = salesRollups;
+        this.outbox = outbox;
+        this.archive = archive;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
     }
 
     private User currentUser(Authentication auth) {
@@ -46,84 +90,141 @@ public class OrderController {
     @PostMapping
     public ResponseEntity<?> createOrder(
             @RequestBody(required = false) CreateOrderRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
             Authentication auth
     ) {
+        if (idempotencyKey == null) {
+            return placeOrder(request, auth);
+        }
+
+        // Повтор с тем же ключом не должен второй раз списывать остатки и создавать заказ
+        String fingerprint = request != null ? request.cartItemIds() + "|" + request.couponCode() : "null";
+        return idempotency.execute(auth.getName(), idempotencyKey, fingerprint,
+                () -> placeOrder(request, auth));
+    }
+
+    private ResponseEntity<?> placeOrder(CreateOrderRequest request, Authentication auth) {
+        if (checkoutBatcher.isEnabled()) {
+            // Пакетный режим: заказ оформится в фоне, клиент опрашивает статус заявки
+            return checkoutBatcher.submit(auth.getName(), request)
+                    .<ResponseEntity<?>>map(ticket -> ResponseEntity
+                            .accepted()
+                            .location(URI.create("/api/orders/checkout/" + ticket.getId()))
+                            .body(ticket))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .body("Слишком много заказов, попробуйте ещё раз"));
+        }
+
         User user = currentUser(auth);
 
-        // Все позиции корзины пользователя
-        List<CartItem> userItems = cartItems.findByUser(user);
+        // Все позиции корзины пользователя (несохранённые правки сначала пишутся в БД)
+        List<CartItem> userItems = cartStore.checkoutItems(user);
         if (userItems.isEmpty()) {
             return ResponseEntity.badRequest().body("Корзина пуста");
         }
 
         // Если пришёл список id – фильтруем только их
-        List<CartItem> itemsToOrder = userItems;
-        if (request != null && request.cartItemIds() != null && !request.cartItemIds().isEmpty()) {
-            Set<Long> ids = request.cartItemIds().stream().collect(Collectors.toSet());
-            itemsToOrder = userItems.stream()
-                    .filter(ci -> ids.contains(ci.getId()))
-                    .collect(Collectors.toList());
-        }
+        List<CartItem> itemsToOrder = CreateOrderRequest.select(request, userItems);
 
         if (itemsToOrder.isEmpty()) {
             return ResponseEntity.badRequest().body("Не выбрано ни одной позиции для оформления");
         }
 
-        // Проверяем и уменьшаем остатки по каждому товару
-        for (CartItem ci : itemsToOrder) {
-            Product product = ci.getProduct();
-            Integer stock = product.getStock();
-            Integer qty = ci.getQuantity();
-
-            if (qty == null || qty <= 0) {
-                continue;
+        List<CartItem> lines = itemsToOrder.stream()
+                .filter(ci -> ci.getQuantity() != null && ci.getQuantity() > 0)
+                .toList();
+
+        // Остатки, заказ, его позиции, итоги продаж, событие для внешних систем, удаление
+        // из корзины и ответ на Idempotency-Key — одна транзакция: если любая часть откатится
+        // (например, ключ перехватил повтор), списание откатится вместе с заказом
+        ResponseEntity<?> response = tx.execute(status -> {
+            // Строки товаров блокируются до коммита: параллельное оформление ждёт и видит
+            // уже списанный остаток
+            Map<Long, Product> locked = new HashMap<>();
+            Set<Long> productIds = lines.stream().map(ci -> ci.getProduct().getId()).collect(Collectors.toSet());
+            if (!productIds.isEmpty()) {
+                products.lockAllById(productIds).forEach(p -> locked.put(p.getId(), p));
             }
 
-            if (stock != null) {
-                if (stock < qty) {
+            // Проверяем остатки по каждому товару
+            for (CartItem ci : lines) {
+                Product product = locked.get(ci.getProduct().getId());
+                if (product == null) {
+                    return ResponseEntity.badRequest().body("Товар из корзины больше не продаётся");
+                }
+                Integer stock = product.getStock();
+                if (stock != null && stock < ci.getQuantity()) {
                     return ResponseEntity.badRequest()
                             .body("Недостаточно товара \"" + product.getName() + "\" на складе");
                 }
             }
-        }
-
-        // Если проверки прошли, уменьшаем stock
-        for (CartItem ci : itemsToOrder) {
-            Product product = ci.getProduct();
-            Integer stock = product.getStock();
-            Integer qty = ci.getQuantity();
 
-            if (qty == null || qty <= 0) {
-                continue;
+            // Если проверки прошли, уменьшаем stock
+            for (CartItem ci : lines) {
+                Product product = locked.get(ci.getProduct().getId());
+                if (product.getStock() != null) {
+                    product.setStock(product.getStock() - ci.getQuantity());
+                }
             }
 
-            if (stock != null) {
-                product.setStock(stock - qty);
-                products.save(product);
-            }
+            // Считаем итоговую сумму по выбранным позициям с учётом акций
+            PriceQuote quote = pricingEngine.quote(itemsToOrder, request != null ? request.couponCode() : null);
+
+            Order order = new Order();
+            order.setUser(user);
+            order.setCreatedAt(Instant.now());
+            order.setStatus("NEW");
+            order.setTotalPrice(quote.total());
+            ResponseEntity<Order> ok = ResponseEntity.ok(order);
+
+            orders.save(order);
+            List<OrderItem> saved = orderItems.saveAll(lines.stream()
+                    .map(ci -> OrderItem.from(order, ci))
+                    .toList());
+            salesRollups.record(List.of(order), saved);
+            outbox.ordersCreated(List.of(order), saved);
+            // Удаляем из корзины только оформленные позиции; если их уже удалило параллельное
+            // оформление той же корзины, удаление не найдёт строк и откатит эту транзакцию
+            cartItems.deleteAll(itemsToOrder);
+            idempotency.completeInTransaction(ok);
+            return ok;
+        });
+
+        if (response.getStatusCode().is2xxSuccessful()) {
+            cartStore.afterCheckout(user, itemsToOrder.stream()
+                    .map(ci -> ci.getProduct().getId())
+                    .collect(Collectors.toList()));
         }
+        return response;
+    }
 
-        // Считаем итоговую сумму по выбранным позициям
-        BigDecimal total = itemsToOrder.stream()
-                .map(ci -> ci.getProduct().getPrice().multiply(BigDecimal.valueOf(ci.getQuantity())))
-                .reduce(BigDecimal.ZERO, (a, b) -> a.add(b));
-
-        Order order = new Order();
-        order.setUser(user);
-        order.setCreatedAt(Instant.now());
-        order.setStatus("NEW");
-        order.setTotalPrice(total);
-
-        orders.save(order);
-
-        // Удаляем из корзины только оформленные позиции
-        cartItems.deleteAll(itemsToOrder);
-
-        return ResponseEntity.ok(order);
+    @GetMapping("/checkout/{ticketId}")
+    public ResponseEntity<CheckoutTicket> checkoutStatus(@PathVariable String ticketId, Authentication auth) {
+        return ResponseEntity.of(checkoutBatcher.find(ticketId, auth.getName()));
     }
 
     @GetMapping
     public List<Order> myOrders(Authentication auth) {
-        return orders.findByUser(currentUser(auth));
+        // Архив читаем до запросов через JPA: EntityManager запроса (open-in-view) держит соединение
+        // с первого запроса до конца ответа, а id пользователя JdbcTemplate возвращает сразу
+        Long userId = jdbc.queryForObject("select id from users where username = ?", Long.class, auth.getName());
+        Optional<Instant> archivedUntil = archive.archivedUntil();
+        List<OrderArchive.ArchivedOrder> archived = archive.findByUser(userId);
+
+        User user = currentUser(auth);
+        List<Order> result = new ArrayList<>(orders.findByUser(user));
+        // Месяц мог уйти в архив между чтением архива и orders — тогда его заказов нет ни там, ни там
+        if (!archive.archivedUntil().equals(archivedUntil)) {
+            archived = archive.findByUser(userId);
+        }
+        // Пока месяц отсоединяется, заказ может быть и в архиве, и в orders
+        Set<Long> seen = result.stream().map(Order::getId).collect(Collectors.toSet());
+        for (OrderArchive.ArchivedOrder order : archived) {
+            if (seen.add(order.id())) {
+                result.add(order.toOrder(user));
+            }
+        }
+        return result;
     }
 }
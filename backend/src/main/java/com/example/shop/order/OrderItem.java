@@ -0,0 +1,68 @@
+package com.example.shop.order;
+
+import com.example.shop.cart.CartItem;
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+
+/**
+ * Позиция заказа. Товар хранится только по id, чтобы удаление товара не ломало историю.
+ */
+@Entity
+@Table(name = "order_items")
+public class OrderItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private Order order;
+
+    @Column(nullable = false)
+    private Long productId;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    /**
+     * Цена за штуку на момент заказа, без скидок.
+     */
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal price;
+
+    public OrderItem() {
+    }
+
+    public OrderItem(Order order, Long productId, int quantity, BigDecimal price) {
+        this.order = order;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public static OrderItem from(Order order, CartItem cartItem) {
+        return new OrderItem(order, cartItem.getProduct().getId(), cartItem.getQuantity(),
+                cartItem.getProduct().getPrice());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.shop.order;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Месячные секции таблицы orders (см. миграцию V11): orders_YYYY_MM с границами
+ * по полуночи UTC первого числа.
+ * <p>
+ * Секции создаются заранее на {@code monthsAhead} месяцев вперёд, чтобы заказы нового месяца
+ * не попадали в orders_default: из неё секцию за этот месяц потом уже не создать.
+ */
+@Component
+public class OrderPartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderPartitions.class);
+
+    private static final String PREFIX = "orders_";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbc;
+    private final int monthsAhead;
+
+    public OrderPartitions(
+            JdbcTemplate jdbc,
+            @Value("${app.orders.partitions.months-ahead:3}") int monthsAhead
+    ) {
+        this.jdbc = jdbc;
+        this.monthsAhead = monthsAhead;
+    }
+
+    public static String name(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    public static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public static Instant end(YearMonth month) {
+        return start(month.plusMonths(1));
+    }
+
+    /**
+     * Месяцы, секции которых сейчас подключены к orders, по возрастанию (без orders_default).
+     */
+    public List<YearMonth> attached() {
+        List<String> names = jdbc.queryForList("""
+                select c.relname from pg_inherits i
+                join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = 'orders'::regclass
+                order by c.relname
+                """, String.class);
+        List<YearMonth> months = new ArrayList<>(names.size());
+        for (String name : names) {
+            parse(name).ifPresent(months::add);
+        }
+        return months;
+    }
+
+    private static Optional<YearMonth> parse(String name) {
+        if (!name.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(YearMonth.parse(name.substring(PREFIX.length()), SUFFIX));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.partitions.interval:PT6H}")
+    public void createAhead() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                jdbc.execute("create table if not exists " + name(month) + " partition of orders"
+                        + " for values from ('" + start(month) + "') to ('" + end(month) + "')");
+            } catch (DataAccessException e) {
+                // Например, в orders_default уже лежат заказы этого месяца
+                log.warn("Не удалось создать секцию {}", name(month), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.shop.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Локальный получатель по умолчанию: дописывает события в файл по одной JSON-строке
+ * и сбрасывает его на диск до подтверждения пачки. Без файла — просто пишет события в лог.
+ */
+public class LocalOutboxSink implements OutboxSink {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalOutboxSink.class);
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    public LocalOutboxSink(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void deliver(List<OutboxMessage> messages) throws IOException {
+        if (file == null) {
+            for (OutboxMessage message : messages) {
+                log.info("Событие {}: {}", message.type(), objectMapper.writeValueAsString(message));
+            }
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (OutboxMessage message : messages) {
+            lines.append(objectMapper.writeValueAsString(message)).append('\n');
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
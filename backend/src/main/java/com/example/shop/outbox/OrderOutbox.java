@@ -0,0 +1,79 @@
+package com.example.shop.outbox;
+
+import com.example.shop.order.Order;
+import com.example.shop.order.OrderItem;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Записывает события о новых заказах в outbox_events. Сама отправка — в {@link OutboxRelay}.
+ */
+@Component
+public class OrderOutbox {
+
+    public static final String ORDER_CREATED = "order.created";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+
+    public OrderOutbox(JdbcTemplate jdbc, ObjectMapper objectMapper) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+    }
+
+    public record Line(Long productId, int quantity, BigDecimal price) { }
+
+    public record OrderCreated(
+            Long orderId,
+            Long userId,
+            Instant createdAt,
+            BigDecimal totalPrice,
+            String status,
+            List<Line> items
+    ) { }
+
+    /**
+     * Должен выполняться в той же транзакции, что и сохранение заказов:
+     * событие появляется тогда и только тогда, когда заказ закоммичен.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void ordersCreated(Collection<Order> orders, Collection<OrderItem> items) {
+        Map<Order, List<Line>> lines = new HashMap<>();
+        for (OrderItem item : items) {
+            lines.computeIfAbsent(item.getOrder(), o -> new ArrayList<>())
+                    .add(new Line(item.getProductId(), item.getQuantity(), item.getPrice()));
+        }
+
+        List<Object[]> rows = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            OrderCreated event = new OrderCreated(
+                    order.getId(),
+                    order.getUser().getId(),
+                    order.getCreatedAt(),
+                    order.getTotalPrice(),
+                    order.getStatus(),
+                    lines.getOrDefault(order, List.of())
+            );
+            rows.add(new Object[]{ORDER_CREATED, order.getId(), toJson(event)});
+        }
+        jdbc.batchUpdate(
+                "insert into outbox_events (event_type, aggregate_id, payload) values (?, ?, ?::jsonb)",
+                rows);
+    }
+
+    private String toJson(Object event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать событие", e);
+        }
+    }
+}
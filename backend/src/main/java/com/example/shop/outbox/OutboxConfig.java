@@ -0,0 +1,24 @@
+package com.example.shop.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class OutboxConfig {
+
+    @Bean
+    public OutboxSink outboxSink(
+            @Value("${app.outbox.sink:file}") String sink,
+            @Value("${app.outbox.file:outbox/events.jsonl}") String file,
+            ObjectMapper objectMapper
+    ) {
+        if ("log".equals(sink)) {
+            return new LocalOutboxSink(null, objectMapper);
+        }
+        return new LocalOutboxSink(Path.of(file), objectMapper);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.shop.outbox;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.Instant;
+
+/**
+ * Событие из outbox_events в том виде, в каком оно уходит получателю.
+ * id постоянен при повторных отправках: по нему получатель отбрасывает дубликаты.
+ */
+public record OutboxMessage(
+        long id,
+        String type,
+        long aggregateId,
+        Instant createdAt,
+        int attempt,
+        @JsonRawValue String payload
+) {
+}
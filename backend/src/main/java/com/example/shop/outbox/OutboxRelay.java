@@ -0,0 +1,154 @@
+package com.example.shop.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Фоновая отправка outbox_events в {@link OutboxSink}.
+ * <p>
+ * Пачка неотправленных событий берётся {@code for update skip locked} и держится заблокированной,
+ * пока получатель её не примет: несколько экземпляров приложения делят очередь и не отправляют
+ * одно событие одновременно. Принятая пачка одним update помечается отправленной в той же транзакции.
+ * Неудачная пачка откладывается с экспоненциально растущей паузой (до {@code maxBackoff}),
+ * остальная очередь при этом не стоит.
+ * <p>
+ * Если процесс упадёт между приёмом пачки получателем и коммитом отметки, пачка уйдёт ещё раз —
+ * с теми же id событий, по которым получатель отбрасывает повторы. Так передача получается
+ * ровно однократной для идемпотентного получателя. Оформление заказа от скорости получателей не зависит.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final OutboxSink sink;
+    private final int batchSize;
+    private final long retryBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Duration retention;
+    private final Counter delivered;
+    private final Counter failed;
+
+    public OutboxRelay(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            OutboxSink sink,
+            MeterRegistry meterRegistry,
+            @Value("${app.outbox.batch-size:100}") int batchSize,
+            @Value("${app.outbox.retry-backoff:1s}") Duration retryBackoff,
+            @Value("${app.outbox.max-backoff:10m}") Duration maxBackoff,
+            @Value("${app.outbox.retention:7d}") Duration retention
+    ) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.retention = retention;
+        this.delivered = Counter.builder("outbox.delivered")
+                .description("Событий передано получателю")
+                .register(meterRegistry);
+        this.failed = Counter.builder("outbox.failed")
+                .description("Неудачных попыток передать событие")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Отправляет всё, что накопилось, пачками; останавливается на пустой, неполной или неудачной пачке.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval:PT0.5S}")
+    public void relay() {
+        try {
+            Integer sent;
+            do {
+                sent = tx.execute(status -> relayBatch());
+            } while (sent != null && sent == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Ошибка отправки outbox", e);
+        }
+    }
+
+    private int relayBatch() {
+        List<OutboxMessage> batch = jdbc.query("""
+                        select id, event_type, aggregate_id, created_at, attempts, payload::text as payload
+                        from outbox_events
+                        where delivered_at is null and next_attempt_at <= now()
+                        order by id
+                        limit ?
+                        for update skip locked
+                        """,
+                (rs, rowNum) -> new OutboxMessage(
+                        rs.getLong("id"),
+                        rs.getString("event_type"),
+                        rs.getLong("aggregate_id"),
+                        rs.getTimestamp("created_at").toInstant(),
+                        rs.getInt("attempts") + 1,
+                        rs.getString("payload")),
+                batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Long[] ids = batch.stream().map(OutboxMessage::id).toArray(Long[]::new);
+
+        try {
+            sink.deliver(batch);
+        } catch (Exception e) {
+            log.warn("Получатель не принял {} событий outbox, повторим позже", batch.size(), e);
+            // Степень ограничена: power считается в float8 и после ~1000 попыток переполнился бы раньше least
+            jdbc.update("""
+                            update outbox_events
+                            set attempts = attempts + 1,
+                                last_error = left(?, 1000),
+                                next_attempt_at = now() + least(? * power(2, least(attempts, 30)), ?) * interval '1 millisecond'
+                            where id = any(?)
+                            """,
+                    ps -> {
+                        ps.setString(1, String.valueOf(e));
+                        ps.setLong(2, retryBackoffMillis);
+                        ps.setLong(3, maxBackoffMillis);
+                        ps.setArray(4, ps.getConnection().createArrayOf("bigint", ids));
+                    });
+            failed.increment(batch.size());
+            return -1;
+        }
+
+        jdbc.update("update outbox_events set delivered_at = now(), attempts = attempts + 1, last_error = null where id = any(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)));
+        delivered.increment(batch.size());
+        return batch.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.cleanup-interval:PT1H}")
+    public void removeDelivered() {
+        try {
+            Timestamp threshold = Timestamp.from(Instant.now().minus(retention));
+            int removed;
+            do {
+                // Небольшими пачками, чтобы не держать долгих блокировок
+                removed = jdbc.update("""
+                                delete from outbox_events
+                                where id in (select id from outbox_events where delivered_at < ? limit 1000)
+                                """,
+                        threshold);
+            } while (removed == 1000);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить старые события outbox", e);
+        }
+    }
+}
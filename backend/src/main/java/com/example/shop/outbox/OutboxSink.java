@@ -0,0 +1,14 @@
+package com.example.shop.outbox;
+
+import java.util.List;
+
+/**
+ * Куда relay передаёт события. Пачка считается доставленной, только если метод
+ * вернулся без исключения; при исключении вся пачка будет отправлена повторно позже.
+ * <p>
+ * Реализация выбирается в {@link OutboxConfig} по {@code app.outbox.sink}.
+ */
+public interface OutboxSink {
+
+    void deliver(List<OutboxMessage> messages) throws Exception;
+}
@@ -0,0 +1,50 @@
+package com.example.shop.pricing;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/promotions")
+@CrossOrigin(origins = "*", allowCredentials = "false")
+public class AdminPromotionController {
+
+    private final PromotionRepository promotions;
+    private final PricingEngine pricingEngine;
+
+    public AdminPromotionController(PromotionRepository promotions, PricingEngine pricingEngine) {
+        this.promotions = promotions;
+        this.pricingEngine = pricingEngine;
+    }
+
+    @GetMapping
+    public List<Promotion> list() {
+        return promotions.findAll();
+    }
+
+    @PostMapping
+    public Promotion create(@RequestBody Promotion p) {
+        p.setId(null);
+        Promotion saved = promotions.save(p);
+        // Новый набор правил сразу после сохранения
+        pricingEngine.reload();
+        return saved;
+    }
+
+    @PutMapping("/{id}")
+    public Promotion update(@PathVariable Long id, @RequestBody Promotion p) {
+        promotions.findById(id).orElseThrow();
+        p.setId(id);
+        Promotion saved = promotions.save(p);
+        pricingEngine.reload();
+        return saved;
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> delete(@PathVariable Long id) {
+        promotions.deleteById(id);
+        pricingEngine.reload();
+        return ResponseEntity.ok().build();
+    }
+}
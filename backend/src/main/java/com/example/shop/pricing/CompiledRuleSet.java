@@ -0,0 +1,254 @@
+package com.example.shop.pricing;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Неизменяемый набор активных промо-правил, разложенный по индексам:
+ * по товару, по категории, по купону и отдельно пороговые скидки на заказ.
+ * Строится один раз при загрузке правил; расчёт корзины только читает его.
+ * <p>
+ * Все суммы — в копейках (long), проценты — в сотых долях процента (bps).
+ */
+final class CompiledRuleSet {
+
+    static final CompiledRuleSet EMPTY = compile(List.of(), Instant.now());
+
+    private static final int PERCENT = 0;
+    private static final int BUY_N_PAY_M = 1;
+
+    static final class LineRule {
+        final String name;
+        final int kind;
+        final long bps;
+        final int buyQty;
+        final int payQty;
+
+        LineRule(String name, int kind, long bps, int buyQty, int payQty) {
+            this.name = name;
+            this.kind = kind;
+            this.bps = bps;
+            this.buyQty = buyQty;
+            this.payQty = payQty;
+        }
+
+        long discount(long unitMinor, int qty) {
+            if (kind == PERCENT) {
+                return unitMinor * qty * bps / 10_000;
+            }
+            // Каждые buyQty штук оплачиваются как payQty
+            long free = (long) (qty / buyQty) * (buyQty - payQty);
+            return free * unitMinor;
+        }
+    }
+
+    static final class ThresholdRule {
+        final String name;
+        final long minSubtotalMinor;
+        final long bps;
+
+        ThresholdRule(String name, long minSubtotalMinor, long bps) {
+            this.name = name;
+            this.minSubtotalMinor = minSubtotalMinor;
+            this.bps = bps;
+        }
+    }
+
+    static final class CouponRules {
+        final LineRule[] all;
+        final Map<String, LineRule[]> byCategory;
+
+        CouponRules(LineRule[] all, Map<String, LineRule[]> byCategory) {
+            this.all = all;
+            this.byCategory = byCategory;
+        }
+    }
+
+    final LineRule[] global;
+    final ProductIndex byProduct;
+    final Map<String, LineRule[]> byCategory;
+    final Map<String, CouponRules> byCoupon;
+    // по убыванию порога: первое подходящее правило — самое «старшее»
+    final ThresholdRule[] thresholds;
+    final int size;
+
+    private CompiledRuleSet(
+            LineRule[] global,
+            ProductIndex byProduct,
+            Map<String, LineRule[]> byCategory,
+            Map<String, CouponRules> byCoupon,
+            ThresholdRule[] thresholds,
+            int size
+    ) {
+        this.global = global;
+        this.byProduct = byProduct;
+        this.byCategory = byCategory;
+        this.byCoupon = byCoupon;
+        this.thresholds = thresholds;
+        this.size = size;
+    }
+
+    static CompiledRuleSet compile(List<Promotion> promotions, Instant now) {
+        List<LineRule> global = new ArrayList<>();
+        Map<Long, List<LineRule>> byProduct = new HashMap<>();
+        Map<String, List<LineRule>> byCategory = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, List<LineRule>> couponAll = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, Map<String, List<LineRule>>> couponByCategory = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<ThresholdRule> thresholds = new ArrayList<>();
+        int size = 0;
+
+        for (Promotion p : promotions) {
+            if (!p.isActive() || p.getType() == null
+                    || (p.getStartsAt() != null && now.isBefore(p.getStartsAt()))
+                    || (p.getEndsAt() != null && !now.isBefore(p.getEndsAt()))) {
+                continue;
+            }
+            String name = p.getName();
+            long bps = toBps(p.getPercent());
+
+            switch (p.getType()) {
+                case PERCENT_OFF -> {
+                    if (bps <= 0) {
+                        continue;
+                    }
+                    LineRule rule = new LineRule(name, PERCENT, bps, 0, 0);
+                    if (p.getProductId() != null) {
+                        byProduct.computeIfAbsent(p.getProductId(), k -> new ArrayList<>()).add(rule);
+                    } else if (p.getCategory() != null) {
+                        byCategory.computeIfAbsent(p.getCategory().trim(), k -> new ArrayList<>()).add(rule);
+                    } else {
+                        global.add(rule);
+                    }
+                }
+                case BUY_N_PAY_M -> {
+                    Integer buy = p.getBuyQty();
+                    Integer pay = p.getPayQty();
+                    if (p.getProductId() == null || buy == null || pay == null || buy <= 0 || pay < 0 || pay >= buy) {
+                        continue;
+                    }
+                    byProduct.computeIfAbsent(p.getProductId(), k -> new ArrayList<>())
+                            .add(new LineRule(name, BUY_N_PAY_M, 0, buy, pay));
+                }
+                case CATEGORY_COUPON -> {
+                    if (bps <= 0 || p.getCouponCode() == null || p.getCouponCode().isBlank()) {
+                        continue;
+                    }
+                    String code = p.getCouponCode().trim();
+                    LineRule rule = new LineRule(name, PERCENT, bps, 0, 0);
+                    if (p.getCategory() != null) {
+                        couponByCategory.computeIfAbsent(code, k -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER))
+                                .computeIfAbsent(p.getCategory().trim(), k -> new ArrayList<>())
+                                .add(rule);
+                    } else {
+                        couponAll.computeIfAbsent(code, k -> new ArrayList<>()).add(rule);
+                    }
+                }
+                case ORDER_THRESHOLD -> {
+                    if (bps <= 0 || p.getMinSubtotal() == null) {
+                        continue;
+                    }
+                    thresholds.add(new ThresholdRule(name, PricingEngine.toMinor(p.getMinSubtotal()), bps));
+                }
+            }
+            size++;
+        }
+
+        Map<String, CouponRules> byCoupon = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Set<String> codes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        codes.addAll(couponAll.keySet());
+        codes.addAll(couponByCategory.keySet());
+        for (String code : codes) {
+            byCoupon.put(code, new CouponRules(
+                    toArray(couponAll.getOrDefault(code, List.of())),
+                    toArrays(couponByCategory.getOrDefault(code, new TreeMap<>()))
+            ));
+        }
+
+        thresholds.sort(Comparator.comparingLong((ThresholdRule t) -> t.minSubtotalMinor).reversed());
+
+        return new CompiledRuleSet(
+                toArray(global),
+                ProductIndex.of(byProduct),
+                toArrays(byCategory),
+                Collections.unmodifiableMap(byCoupon),
+                thresholds.toArray(new ThresholdRule[0]),
+                size
+        );
+    }
+
+    private static long toBps(BigDecimal percent) {
+        if (percent == null || percent.signum() <= 0) {
+            return 0;
+        }
+        long bps = percent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        return Math.min(bps, 10_000);
+    }
+
+    private static LineRule[] toArray(List<LineRule> rules) {
+        return rules.toArray(new LineRule[0]);
+    }
+
+    // Категории и купоны сравниваются без учёта регистра и без лишних строк на каждый поиск
+    private static Map<String, LineRule[]> toArrays(Map<String, List<LineRule>> rules) {
+        Map<String, LineRule[]> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        rules.forEach((k, v) -> result.put(k, toArray(v)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * productId -> правила. Открытая адресация по long-ключам,
+     * чтобы поиск не упаковывал id в Long на каждой позиции.
+     */
+    static final class ProductIndex {
+        private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+        private final long[] keys;
+        private final LineRule[][] values;
+        private final int mask;
+
+        private ProductIndex(long[] keys, LineRule[][] values) {
+            this.keys = keys;
+            this.values = values;
+            this.mask = keys.length - 1;
+        }
+
+        static ProductIndex of(Map<Long, List<LineRule>> rules) {
+            int capacity = Integer.highestOneBit(Math.max(4, rules.size() * 2 - 1)) << 1;
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY_KEY);
+            LineRule[][] values = new LineRule[capacity][];
+            ProductIndex index = new ProductIndex(keys, values);
+
+            rules.forEach((productId, list) -> {
+                int slot = index.slot(productId);
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & index.mask;
+                }
+                keys[slot] = productId;
+                values[slot] = list.toArray(new LineRule[0]);
+            });
+            return index;
+        }
+
+        LineRule[] get(long productId) {
+            int slot = slot(productId);
+            while (true) {
+                long key = keys[slot];
+                if (key == productId) {
+                    return values[slot];
+                }
+                if (key == EMPTY_KEY) {
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.shop.pricing;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Итог расчёта корзины. Внутри — копейки, наружу (в JSON) — рубли.
+ */
+public record PriceQuote(
+        @JsonIgnore long subtotalMinor,
+        @JsonIgnore long discountMinor,
+        @JsonIgnore long totalMinor,
+        List<String> promotions
+) {
+
+    @JsonProperty("subtotal")
+    public BigDecimal subtotal() {
+        return PricingEngine.toMoney(subtotalMinor);
+    }
+
+    @JsonProperty("discount")
+    public BigDecimal discount() {
+        return PricingEngine.toMoney(discountMinor);
+    }
+
+    @JsonProperty("total")
+    public BigDecimal total() {
+        return PricingEngine.toMoney(totalMinor);
+    }
+}
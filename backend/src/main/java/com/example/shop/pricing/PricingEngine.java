@@ -0,0 +1,158 @@
+package com.example.shop.pricing;
+
+import com.example.shop.cart.CartItem;
+import com.example.shop.config.ReadWriteRoutingDataSource;
+import com.example.shop.product.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Расчёт цен корзины и заказа с учётом промо-акций.
+ * <p>
+ * Активные правила загружаются из БД и компилируются в неизменяемый
+ * {@link CompiledRuleSet}, который подменяется атомарно: при изменении акций
+ * через админку и периодически (чтобы включались и выключались акции
+ * с периодом действия). Сам расчёт работает с копейками в long и не
+ * создаёт объектов на каждую позицию.
+ * <p>
+ * На позицию применяется одна, самая выгодная для покупателя скидка;
+ * пороговая скидка на заказ считается от суммы после скидок на позиции.
+ */
+@Service
+public class PricingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PricingEngine.class);
+
+    private final PromotionRepository promotions;
+    private final AtomicReference<CompiledRuleSet> rules = new AtomicReference<>(CompiledRuleSet.EMPTY);
+
+    public PricingEngine(PromotionRepository promotions) {
+        this.promotions = promotions;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.pricing.reload-interval:PT1M}", initialDelayString = "${app.pricing.reload-interval:PT1M}")
+    public void reload() {
+        // Только что изменённая акция может ещё не дойти до реплики
+        CompiledRuleSet compiled = CompiledRuleSet.compile(
+                ReadWriteRoutingDataSource.onPrimary(promotions::findByActiveTrue), Instant.now());
+        CompiledRuleSet previous = rules.getAndSet(compiled);
+        if (previous.size != compiled.size) {
+            log.info("Загружено промо-правил: {}", compiled.size);
+        }
+    }
+
+    public PriceQuote quote(List<CartItem> items, String couponCode) {
+        int n = items.size();
+        long[] productIds = new long[n];
+        String[] categories = new String[n];
+        long[] unitMinor = new long[n];
+        int[] quantities = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            CartItem item = items.get(i);
+            Product product = item.getProduct();
+            productIds[i] = product.getId();
+            categories[i] = product.getCategory();
+            unitMinor[i] = toMinor(product.getPrice());
+            quantities[i] = item.getQuantity() != null ? item.getQuantity() : 0;
+        }
+        return quote(productIds, categories, unitMinor, quantities, n, couponCode);
+    }
+
+    /**
+     * Расчёт по «колонкам» позиций: id товара, категория, цена в копейках, количество.
+     */
+    public PriceQuote quote(long[] productIds, String[] categories, long[] unitMinor, int[] quantities,
+                            int n, String couponCode) {
+        CompiledRuleSet set = rules.get();
+        CompiledRuleSet.CouponRules coupon = couponCode == null || couponCode.isBlank()
+                ? null
+                : set.byCoupon.get(couponCode.trim());
+
+        List<String> applied = null;
+        long subtotal = 0;
+        long lineDiscounts = 0;
+
+        for (int i = 0; i < n; i++) {
+            long unit = unitMinor[i];
+            int qty = quantities[i];
+            if (qty <= 0) {
+                continue;
+            }
+            subtotal += unit * qty;
+
+            String category = categories[i];
+            CompiledRuleSet.LineRule best = null;
+            long bestDiscount = 0;
+
+            CompiledRuleSet.LineRule[] candidates = set.global;
+            for (int pass = 0; pass < 5; pass++) {
+                switch (pass) {
+                    case 1 -> candidates = set.byProduct.get(productIds[i]);
+                    case 2 -> candidates = category != null ? set.byCategory.get(category) : null;
+                    case 3 -> candidates = coupon != null ? coupon.all : null;
+                    case 4 -> candidates = coupon != null && category != null ? coupon.byCategory.get(category) : null;
+                    default -> { }
+                }
+                if (candidates == null) {
+                    continue;
+                }
+                for (CompiledRuleSet.LineRule rule : candidates) {
+                    long d = rule.discount(unit, qty);
+                    if (d > bestDiscount) {
+                        bestDiscount = d;
+                        best = rule;
+                    }
+                }
+            }
+
+            if (best != null) {
+                lineDiscounts += Math.min(bestDiscount, unit * qty);
+                applied = addName(applied, best.name);
+            }
+        }
+
+        long afterLines = subtotal - lineDiscounts;
+        long orderDiscount = 0;
+        for (CompiledRuleSet.ThresholdRule rule : set.thresholds) {
+            if (afterLines >= rule.minSubtotalMinor) {
+                orderDiscount = afterLines * rule.bps / 10_000;
+                applied = addName(applied, rule.name);
+                break;
+            }
+        }
+
+        long discount = lineDiscounts + orderDiscount;
+        return new PriceQuote(subtotal, discount, subtotal - discount, applied != null ? applied : List.of());
+    }
+
+    private static List<String> addName(List<String> applied, String name) {
+        if (applied == null) {
+            applied = new ArrayList<>(4);
+        }
+        if (!applied.contains(name)) {
+            applied.add(name);
+        }
+        return applied;
+    }
+
+    public static long toMinor(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toMoney(long minor) {
+        return BigDecimal.valueOf(minor, 2);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.shop.pricing;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Entity
+@Table(name = "promotions")
+public class Promotion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 127)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 31)
+    private PromotionType type;
+
+    @Column(nullable = false)
+    private boolean active = true;
+
+    /**
+     * Товар, к которому применяется правило (PERCENT_OFF, BUY_N_PAY_M).
+     */
+    private Long productId;
+
+    /**
+     * Категория товаров (PERCENT_OFF, CATEGORY_COUPON).
+     */
+    @Column(length = 63)
+    private String category;
+
+    @Column(length = 63)
+    private String couponCode;
+
+    /**
+     * Размер скидки в процентах, например 12.50.
+     */
+    @Column(precision = 5, scale = 2)
+    private BigDecimal percent;
+
+    private Integer buyQty;
+
+    private Integer payQty;
+
+    @Column(precision = 15, scale = 2)
+    private BigDecimal minSubtotal;
+
+    /**
+     * Период действия; null — без ограничения.
+     */
+    private Instant startsAt;
+
+    private Instant endsAt;
+
+    public Promotion() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public PromotionType getType() {
+        return type;
+    }
+
+    public void setType(PromotionType type) {
+        this.type = type;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getCouponCode() {
+        return couponCode;
+    }
+
+    public void setCouponCode(String couponCode) {
+        this.couponCode = couponCode;
+    }
+
+    public BigDecimal getPercent() {
+        return percent;
+    }
+
+    public void setPercent(BigDecimal percent) {
+        this.percent = percent;
+    }
+
+    public Integer getBuyQty() {
+        return buyQty;
+    }
+
+    public void setBuyQty(Integer buyQty) {
+        this.buyQty = buyQty;
+    }
+
+    public Integer getPayQty() {
+        return payQty;
+    }
+
+    public void setPayQty(Integer payQty) {
+        this.payQty = payQty;
+    }
+
+    public BigDecimal getMinSubtotal() {
+        return minSubtotal;
+    }
+
+    public void setMinSubtotal(BigDecimal minSubtotal) {
+        this.minSubtotal = minSubtotal;
+    }
+
+    public Instant getStartsAt() {
+        return startsAt;
+    }
+
+    public void setStartsAt(Instant startsAt) {
+        this.startsAt = startsAt;
+    }
+
+    public Instant getEndsAt() {
+        return endsAt;
+    }
+
+    public void setEndsAt(Instant endsAt) {
+        this.endsAt = endsAt;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.shop.pricing;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface PromotionRepository extends JpaRepository<Promotion, Long> {
+    List<Promotion> findByActiveTrue();
+}
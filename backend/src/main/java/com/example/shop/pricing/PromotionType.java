@@ -0,0 +1,12 @@
+package com.example.shop.pricing;
+
+public enum PromotionType {
+    /** Скидка percent% на товар (productId), категорию (category) или на всё. */
+    PERCENT_OFF,
+    /** «N по цене M»: каждые buyQty штук товара productId стоят как payQty. */
+    BUY_N_PAY_M,
+    /** Скидка percent% на категорию (или на всё) по купону couponCode. */
+    CATEGORY_COUPON,
+    /** Скидка percent% на весь заказ от суммы minSubtotal. */
+    ORDER_THRESHOLD
+}
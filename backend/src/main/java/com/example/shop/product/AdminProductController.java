@@ -75,6 +75,19 @@ public class AdminProductController {
         }
         p.setStock(stock);
 
+        // Пустая категория — без категории
+        String category = p.getCategory();
+        if (category != null) {
+            category = category.trim();
+            if (category.length() > 63) {
+                category = category.substring(0, 63);
+            }
+            if (category.isEmpty()) {
+                category = null;
+            }
+        }
+        p.setCategory(category);
+
         return p;
     }
 @GetMapping
@@ -97,6 +110,7 @@ public class AdminProductController {
         existing.setPrice(p.getPrice());
         existing.setImageUrl(p.getImageUrl());
         existing.setStock(p.getStock());
+        existing.setCategory(p.getCategory());
         applyLimits(existing);
         return products.save(existing);
     }
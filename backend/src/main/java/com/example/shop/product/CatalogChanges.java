@@ -0,0 +1,110 @@
+package com.example.shop.product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Дельта-синхронизация каталога: что изменилось и удалилось после версии since.
+ * <p>
+ * Версия изменения — id транзакции, которая его сделала (см. миграцию V13). Текущая версия берётся
+ * из того же снимка, что и изменения: все транзакции с версией не выше неё уже завершены,
+ * так что изменение, закоммиченное позже, не окажется позади версии, выданной клиенту.
+ * Надгробия хранятся {@code tombstoneRetention}, клиент с более старой версией получает reset.
+ */
+@Component
+public class CatalogChanges {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogChanges.class);
+
+    private final ProductRepository products;
+    private final ProductTombstoneRepository tombstones;
+    private final Duration tombstoneRetention;
+
+    public CatalogChanges(
+            ProductRepository products,
+            ProductTombstoneRepository tombstones,
+            @Value("${app.products.changes.tombstone-retention:30d}") Duration tombstoneRetention
+    ) {
+        this.products = products;
+        this.tombstones = tombstones;
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
+    /**
+     * Вызывается в read-only транзакции с уровнем изоляции не ниже REPEATABLE READ.
+     *
+     * @param resumeReset since — версия из ответа с reset и hasMore: продолжаем полную синхронизацию
+     */
+    public ProductChanges since(long since, boolean resumeReset, int limit) {
+        long current = tombstones.currentVersion();
+        // Продолжение reset проверять по надгробиям не нужно: клиент и так собирает каталог заново,
+        // иначе страница с версией ниже pruned снова начиналась бы с нуля
+        boolean resuming = resumeReset && since > 0 && since <= current;
+        boolean reset = resuming || since <= 0 || since > current || since < tombstones.prunedVersion();
+        long from = reset && !resuming ? 0 : since;
+
+        List<Product> upserts = products.findChanged(from, current, Limit.of(limit));
+        // На первой странице reset удаления не нужны, а на следующих нужны: товар с прошлой
+        // страницы могли удалить, пока клиент догружал остальные
+        List<ProductTombstone> deleted = reset && !resuming
+                ? List.of()
+                : tombstones.findChanged(from, current, Limit.of(limit));
+
+        // Если упёрлись в лимит, отдаём изменения до меньшей из последних версий, остальное — следующим запросом
+        long version = current;
+        boolean hasMore = false;
+        if (upserts.size() == limit) {
+            version = pageEnd(upserts.get(0).getChangeVersion(), upserts.get(limit - 1).getChangeVersion());
+            hasMore = true;
+        }
+        if (deleted.size() == limit) {
+            version = Math.min(version, pageEnd(deleted.get(0).getChangeVersion(), deleted.get(limit - 1).getChangeVersion()));
+            hasMore = true;
+        }
+        long until = version;
+
+        // Страница целиком из одной транзакции: догружаем её изменения без лимита
+        if (upserts.size() == limit && upserts.get(limit - 1).getChangeVersion() <= until) {
+            upserts = products.findChanged(from, until, Limit.unlimited());
+        }
+        if (deleted.size() == limit && deleted.get(limit - 1).getChangeVersion() <= until) {
+            deleted = tombstones.findChanged(from, until, Limit.unlimited());
+        }
+
+        return new ProductChanges(
+                version,
+                reset,
+                hasMore,
+                upserts.stream().filter(p -> p.getChangeVersion() <= until).toList(),
+                deleted.stream()
+                        .filter(t -> t.getChangeVersion() <= until)
+                        .map(ProductTombstone::getProductId)
+                        .toList()
+        );
+    }
+
+    /**
+     * Последняя версия, которую страница отдаёт целиком. У изменений одной транзакции одна версия,
+     * и за последней строкой могут идти ещё строки с той же версией — её оставляем следующей странице.
+     */
+    private static long pageEnd(long first, long last) {
+        return first == last ? last : last - 1;
+    }
+
+    @Scheduled(fixedDelayString = "${app.products.changes.cleanup-interval:PT6H}")
+    public void pruneTombstones() {
+        try {
+            tombstones.pruneOlderThan(Instant.now().minus(tombstoneRetention));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось очистить старые надгробия товаров", e);
+        }
+    }
+}
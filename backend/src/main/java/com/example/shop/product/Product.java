@@ -1,7 +1,12 @@
 package com.example.shop.product;
 
+import com.example.shop.config.FieldSelection;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 
@@ -9,6 +14,9 @@ import java.math.BigDecimal;
 @Table(name = "products")
 // Игнорируем служебные поля Hibernate, чтобы не падала сериализация прокси Hibernate
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+// Товары читаются намного чаще, чем меняются, поэтому держим их в кэше второго уровня
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@JsonFilter(FieldSelection.FILTER)
 public class Product {
 
     @Id
@@ -37,6 +45,20 @@ public class Product {
      */
     private Integer stock;
 
+    /**
+     * Категория товара (для акций по категориям). Может быть null.
+     */
+    @Column(length = 63)
+    private String category;
+
+    /**
+     * Версия последнего изменения (для дельта-синхронизации каталога).
+     * Назначается триггером в БД, поэтому у только что сохранённого объекта может быть устаревшей.
+     */
+    @JsonIgnore
+    @Column(nullable = false, insertable = false, updatable = false)
+    private long changeVersion;
+
     public Product() {
     }
 
@@ -96,4 +118,16 @@ public class Product {
     public void setStock(Integer stock) {
         this.stock = stock;
     }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public long getChangeVersion() {
+        return changeVersion;
+    }
 }
\ No newline at end of file
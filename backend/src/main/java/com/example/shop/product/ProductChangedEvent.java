@@ -0,0 +1,28 @@
+package com.example.shop.product;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+
+/**
+ * Изменение цены или остатка товара. Публикует {@link com.example.shop.cache.InvalidationBus}
+ * по уведомлению БД после коммита — на каждом экземпляре, где бы товар ни изменили
+ * (правка в админке, списание остатка на оформлении, запись в SQL).
+ * <p>
+ * Это же компактная дельта, которую получают подписчики {@code /api/products/stream}.
+ */
+public record ProductChangedEvent(
+        Long id,
+        BigDecimal price,
+        Integer stock,
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean deleted
+) {
+
+    public static ProductChangedEvent of(Product product) {
+        return new ProductChangedEvent(product.getId(), product.getPrice(), product.getStock(), false);
+    }
+
+    public static ProductChangedEvent deleted(Long id) {
+        return new ProductChangedEvent(id, null, null, true);
+    }
+}
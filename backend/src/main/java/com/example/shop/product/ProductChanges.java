@@ -0,0 +1,19 @@
+package com.example.shop.product;
+
+import java.util.List;
+
+/**
+ * Ответ {@code GET /api/products/changes}.
+ *
+ * @param version следующий since для клиента
+ * @param reset   история с since неполная: клиент должен заменить свой каталог на upserts (и догрузить hasMore)
+ * @param hasMore изменений больше лимита — запросить ещё раз с since = version и тем же reset
+ */
+public record ProductChanges(
+        long version,
+        boolean reset,
+        boolean hasMore,
+        List<Product> upserts,
+        List<Long> deletes
+) {
+}
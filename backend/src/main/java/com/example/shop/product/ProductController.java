@@ -1,27 +1,66 @@
 package com.example.shop.product;
 
+import com.example.shop.config.FieldSelection;
+import com.example.shop.config.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/products")
 @CrossOrigin(origins = "*", allowCredentials = "false")
+// Каталог только читается, поэтому может обслуживаться репликой
+@Transactional(readOnly = true)
 public class ProductController {
 
+    private static final int MAX_CHANGES_LIMIT = 5000;
+
     private final ProductRepository products;
+    private final CatalogChanges catalogChanges;
+    // Всплеск запросов одного товара мимо кэша — один findById на всех
+    private final SingleFlight<Long, Optional<Product>> productLoads;
 
-    public ProductController(ProductRepository products) {
+    public ProductController(
+            ProductRepository products,
+            CatalogChanges catalogChanges,
+            MeterRegistry meterRegistry
+    ) {
         this.products = products;
+        this.catalogChanges = catalogChanges;
+        this.productLoads = new SingleFlight<>("product-by-id", meterRegistry);
     }
 
+    /**
+     * Каталог для сетки товаров: краткие карточки без описания.
+     * fields — через запятую, только эти свойства (например, fields=id,price,stock).
+     */
     @GetMapping
-    public List<Product> getAll() {
-        return products.findAll();
+    public MappingJacksonValue getAll(@RequestParam(required = false) String fields) {
+        return FieldSelection.apply(products.findAllSummaries(), fields);
+    }
+
+    /**
+     * Изменения каталога после версии since: изменённые товары, id удалённых и новая версия.
+     * Без since (или с устаревшей версией) — весь каталог с reset = true; его следующие страницы
+     * запрашиваются с reset = true.
+     */
+    @GetMapping("/changes")
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public ProductChanges changes(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "false") boolean reset,
+            @RequestParam(defaultValue = "1000") int limit
+    ) {
+        return catalogChanges.since(since, reset, Math.min(Math.max(limit, 1), MAX_CHANGES_LIMIT));
     }
 
     @GetMapping("/{id}")
-    public Product getById(@PathVariable Long id) {
-        return products.findById(id).orElseThrow();
+    public MappingJacksonValue getById(@PathVariable Long id, @RequestParam(required = false) String fields) {
+        Product product = productLoads.load(id, () -> products.findById(id)).orElseThrow();
+        return FieldSelection.apply(product, fields);
     }
 }
@@ -0,0 +1,293 @@
+package com.example.shop.product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рассылка изменений цен и остатков подписчикам SSE ({@code GET /api/products/stream}).
+ * <p>
+ * Открытое соединение не занимает поток сервера: это асинхронный запрос, в который
+ * пишут только когда есть что отправить. Изменения приходят от шины инвалидации
+ * (уведомления БД), поэтому видны и правки с других экземпляров. Они копятся в общей
+ * карте «товар → последнее значение» и раз в {@code coalesceWindow} раздаются подписчикам,
+ * так что серия быстрых правок одного товара уходит одним событием.
+ * <p>
+ * У каждого подписчика свой ограниченный буфер неотправленных дельт и не больше
+ * одной отправки в работе; при переполнении буфера вместо дельт он получает событие
+ * {@code resync} и перечитывает каталог. Сама отправка — блокирующая запись в сокет:
+ * клиент с заполненным TCP-буфером держит поток отправителя. Поэтому пул отправителей
+ * растёт до {@code maxSenderThreads}, пока такие клиенты висят, а подписчик, чья запись
+ * не закончилась за {@code writeTimeout}, отключается и больше ничего не получает.
+ * Его поток освобождается, когда контейнер сам оборвёт запись по таймауту сокета.
+ */
+@Component
+public class ProductEventStream implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductEventStream.class);
+
+    private final int senderThreads;
+    private final int maxSenderThreads;
+    private final int maxSubscribers;
+    private final int bufferSize;
+    private final long coalesceWindowMillis;
+    private final long timeoutMillis;
+    private final long heartbeatMillis;
+    private final long writeTimeoutMillis;
+
+    // Изменения, ещё не разосланные подписчикам (последнее значение на товар)
+    private final ConcurrentHashMap<Long, ProductChangedEvent> changes = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private volatile boolean running;
+    private ScheduledExecutorService ticker;
+    private ThreadPoolExecutor senders;
+
+    public ProductEventStream(
+            @Value("${app.products.stream.sender-threads:2}") int senderThreads,
+            @Value("${app.products.stream.max-sender-threads:32}") int maxSenderThreads,
+            @Value("${app.products.stream.max-subscribers:10000}") int maxSubscribers,
+            @Value("${app.products.stream.buffer-size:256}") int bufferSize,
+            @Value("${app.products.stream.coalesce-window:200ms}") Duration coalesceWindow,
+            @Value("${app.products.stream.timeout:30m}") Duration timeout,
+            @Value("${app.products.stream.heartbeat:25s}") Duration heartbeat,
+            @Value("${app.products.stream.write-timeout:5s}") Duration writeTimeout
+    ) {
+        this.senderThreads = senderThreads;
+        this.maxSenderThreads = Math.max(senderThreads, maxSenderThreads);
+        this.maxSubscribers = maxSubscribers;
+        this.bufferSize = bufferSize;
+        this.coalesceWindowMillis = coalesceWindow.toMillis();
+        this.timeoutMillis = timeout.toMillis();
+        this.heartbeatMillis = heartbeat.toMillis();
+        this.writeTimeoutMillis = writeTimeout.toMillis();
+    }
+
+    /**
+     * Новая подписка. productIds — интересующие товары (пусто — все).
+     * Пусто — сервис остановлен или подписчиков слишком много.
+     */
+    public Optional<SseEmitter> subscribe(Collection<Long> productIds) {
+        if (!running || subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter,
+                productIds == null || productIds.isEmpty() ? null : Set.copyOf(productIds));
+        subscribers.add(subscriber);
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> {
+            unsubscribe(subscriber);
+            emitter.complete();
+        });
+        emitter.onError(e -> unsubscribe(subscriber));
+        return Optional.of(emitter);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        // Поток, изменивший товар, только кладёт дельту в карту — рассылает ticker
+        if (running && !subscribers.isEmpty()) {
+            changes.put(event.id(), event);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    // ---------- рассылка ----------
+
+    private void tick() {
+        try {
+            List<ProductChangedEvent> batch = new ArrayList<>(changes.size());
+            for (ProductChangedEvent event : changes.values()) {
+                // remove(key, value): не теряем изменение, пришедшее во время обхода
+                if (changes.remove(event.id(), event)) {
+                    batch.add(event);
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (Subscriber subscriber : subscribers) {
+                long writeStartedAt = subscriber.writeStartedAt;
+                if (writeStartedAt != 0 && now - writeStartedAt > writeTimeoutMillis) {
+                    // Клиент не читает: emitter не закрыть, пока запись держит его блокировку,
+                    // поэтому просто перестаём что-либо ему отправлять
+                    log.info("Подписчик потока товаров не принимает данные дольше {} мс, отключаем", writeTimeoutMillis);
+                    unsubscribe(subscriber);
+                    continue;
+                }
+                boolean hasWork = false;
+                for (ProductChangedEvent event : batch) {
+                    hasWork |= subscriber.offer(event);
+                }
+                if (!hasWork && now - subscriber.lastSentAt >= heartbeatMillis) {
+                    hasWork = subscriber.heartbeat();
+                }
+                if (hasWork && subscriber.claim()) {
+                    try {
+                        senders.execute(() -> flush(subscriber));
+                    } catch (RejectedExecutionException e) {
+                        // Все отправители заняты — дельты остаются в буфере до следующего окна
+                        subscriber.release();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось разослать изменения товаров", e);
+        }
+    }
+
+    // Выполняется в пуле отправителей, одновременно не больше одной отправки на подписчика
+    private void flush(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.next()) != null) {
+                subscriber.writeStartedAt = System.currentTimeMillis();
+                subscriber.emitter.send(event);
+                subscriber.writeStartedAt = 0;
+                subscriber.lastSentAt = System.currentTimeMillis();
+                if (!subscribers.contains(subscriber)) {
+                    // Отключён по таймауту записи, пока она висела
+                    subscriber.emitter.complete();
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Клиент ушёл — соединение закроет контейнер
+            unsubscribe(subscriber);
+        } finally {
+            subscriber.writeStartedAt = 0;
+        }
+    }
+
+    private final class Subscriber {
+
+        final SseEmitter emitter;
+        final Set<Long> productIds;
+        volatile long lastSentAt = System.currentTimeMillis();
+        // Когда началась текущая запись в сокет, 0 — записи нет
+        volatile long writeStartedAt;
+
+        // Неотправленные дельты, под монитором подписчика
+        private final Map<Long, ProductChangedEvent> pending = new LinkedHashMap<>();
+        private boolean resync;
+        private boolean heartbeat;
+        private boolean sending;
+
+        Subscriber(SseEmitter emitter, Set<Long> productIds) {
+            this.emitter = emitter;
+            this.productIds = productIds;
+        }
+
+        synchronized boolean offer(ProductChangedEvent event) {
+            if (productIds != null && !productIds.contains(event.id())) {
+                return false;
+            }
+            if (!resync) {
+                pending.put(event.id(), event);
+                if (pending.size() > bufferSize) {
+                    // Клиент не успевает — дельты бесполезны, пусть перечитает каталог
+                    pending.clear();
+                    resync = true;
+                }
+            }
+            return true;
+        }
+
+        synchronized boolean heartbeat() {
+            heartbeat = true;
+            return true;
+        }
+
+        synchronized boolean claim() {
+            if (sending) {
+                return false;
+            }
+            sending = true;
+            return true;
+        }
+
+        synchronized void release() {
+            sending = false;
+        }
+
+        synchronized SseEmitter.SseEventBuilder next() {
+            if (resync) {
+                resync = false;
+                heartbeat = false;
+                return SseEmitter.event().name("resync").data("");
+            }
+            if (!pending.isEmpty()) {
+                List<ProductChangedEvent> deltas = new ArrayList<>(pending.values());
+                pending.clear();
+                heartbeat = false;
+                return SseEmitter.event().name("products").data(deltas);
+            }
+            if (heartbeat) {
+                heartbeat = false;
+                return SseEmitter.event().comment("");
+            }
+            sending = false;
+            return null;
+        }
+    }
+
+    // ---------- жизненный цикл ----------
+
+    @Override
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "product-stream-ticker"));
+        AtomicInteger n = new AtomicInteger();
+        // Без очереди: задача получает свободный поток или новый, пока их не больше maxSenderThreads
+        senders = new ThreadPoolExecutor(senderThreads, maxSenderThreads, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> new Thread(r, "product-stream-sender-" + n.incrementAndGet()));
+        running = true;
+        ticker.scheduleWithFixedDelay(this::tick, coalesceWindowMillis, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        // Открытые подписки не должны задерживать остановку веб-сервера
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+        subscriberCount.set(0);
+        changes.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Закрываем подписки раньше, чем веб-сервер начнёт ждать активные запросы
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+}
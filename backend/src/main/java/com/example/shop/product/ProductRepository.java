@@ -1,6 +1,28 @@
 package com.example.shop.product;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    // Блокируем строки в порядке id, чтобы параллельные списания не упирались в дедлок
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Product p where p.id in :ids order by p.id")
+    List<Product> lockAllById(@Param("ids") Collection<Long> ids);
+
+    @Query("select new com.example.shop.product.ProductSummary(p.id, p.name, p.price, p.imageUrl, p.stock) from Product p")
+    List<ProductSummary> findAllSummaries();
+
+    @Query("select new com.example.shop.product.ProductSummary(p.id, p.name, p.price, p.imageUrl, p.stock) from Product p where p.id in :ids")
+    List<ProductSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select p from Product p where p.changeVersion > :since and p.changeVersion <= :until order by p.changeVersion")
+    List<Product> findChanged(@Param("since") long since, @Param("until") long until, Limit limit);
 }
@@ -0,0 +1,37 @@
+package com.example.shop.product;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/products")
+@CrossOrigin(origins = "*", allowCredentials = "false")
+public class ProductStreamController {
+
+    private final ProductEventStream stream;
+
+    public ProductStreamController(ProductEventStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Поток изменений цен и остатков (text/event-stream).
+     * Событие products — массив дельт {id, price, stock[, deleted]},
+     * resync — изменений было слишком много, нужно перечитать каталог.
+     * ids — только эти товары (по умолчанию все).
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@RequestParam(required = false) List<Long> ids) {
+        return stream.subscribe(ids)
+                .map(emitter -> ResponseEntity.ok()
+                        // Nginx не должен буферизовать поток
+                        .header("X-Accel-Buffering", "no")
+                        .body(emitter))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<SseEmitter>build());
+    }
+}
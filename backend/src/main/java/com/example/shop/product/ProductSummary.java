@@ -0,0 +1,20 @@
+package com.example.shop.product;
+
+import com.example.shop.config.FieldSelection;
+import com.fasterxml.jackson.annotation.JsonFilter;
+
+import java.math.BigDecimal;
+
+/**
+ * Товар для списков (каталог): только то, что показывает карточка в сетке.
+ * Читается из БД проекцией, без описания и прочих полей сущности.
+ */
+@JsonFilter(FieldSelection.FILTER)
+public record ProductSummary(
+        Long id,
+        String name,
+        BigDecimal price,
+        String imageUrl,
+        Integer stock
+) {
+}
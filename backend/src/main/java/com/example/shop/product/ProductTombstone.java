@@ -0,0 +1,34 @@
+package com.example.shop.product;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Отметка об удалённом товаре для дельта-синхронизации. Записывается триггером при удалении строки products.
+ */
+@Entity
+@Table(name = "product_tombstones")
+public class ProductTombstone {
+
+    @Id
+    private Long productId;
+
+    @Column(nullable = false)
+    private long changeVersion;
+
+    @Column(nullable = false)
+    private Instant deletedAt;
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public long getChangeVersion() {
+        return changeVersion;
+    }
+
+    public Instant getDeletedAt() {
+        return deletedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.shop.product;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ProductTombstoneRepository extends JpaRepository<ProductTombstone, Long> {
+
+    @Query("select t from ProductTombstone t where t.changeVersion > :since and t.changeVersion <= :until order by t.changeVersion")
+    List<ProductTombstone> findChanged(@Param("since") long since, @Param("until") long until, Limit limit);
+
+    // Версии — id транзакций (см. миграцию V13): все транзакции младше xmin снимка уже завершены
+    @Query(value = "select pg_snapshot_xmin(pg_current_snapshot())::text::bigint - 1 + xid_offset from catalog_version where id = 1",
+            nativeQuery = true)
+    long currentVersion();
+
+    @Query(value = "select pruned_version from catalog_version where id = 1", nativeQuery = true)
+    long prunedVersion();
+
+    // Удаляет старые надгробия и запоминает, до какой версии история неполная
+    @Modifying
+    @Transactional
+    @Query(value = """
+            with pruned as (
+                delete from product_tombstones where deleted_at < :threshold returning change_version
+            )
+            update catalog_version
+            set pruned_version = greatest(pruned_version, coalesce((select max(change_version) from pruned), 0))
+            where id = 1
+            """, nativeQuery = true)
+    int pruneOlderThan(@Param("threshold") Instant threshold);
+}
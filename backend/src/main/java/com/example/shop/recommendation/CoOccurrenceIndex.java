@@ -0,0 +1,240 @@
+package com.example.shop.recommendation;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * «С этим товаром покупают»: разреженная матрица совместных покупок и top-K соседей в памяти.
+ * <p>
+ * Фоновый проход берёт только новые строки order_items и cart_items (после сохранённой
+ * отметки в recommendation_state), считает по ним приращения весов пар и добавляет их
+ * в product_pairs. Отметка — id транзакции (created_xid строки), а не id строки: id выдаётся
+ * при вставке, и строка с меньшим id может закоммититься позже. Проход берёт транзакции
+ * меньше pg_snapshot_xmin — все они завершены, — так что долгая транзакция придерживает
+ * рекомендации, но ничего не теряется. Строка состояния блокируется, поэтому пишет один экземпляр за раз.
+ * Затем каждый экземпляр дочитывает изменившиеся пары по updated_seq и пересчитывает
+ * top-K только у затронутых товаров. Полного пересчёта нет ни при обновлении, ни при старте:
+ * после рестарта матрица просто загружается из product_pairs.
+ * <p>
+ * Товары в матрице — long-ключи fastutil, без упаковки в Long.
+ */
+@Component
+public class CoOccurrenceIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CoOccurrenceIndex.class);
+
+    // Совместный заказ — сильный сигнал, совместная корзина — слабый
+    private static final int ORDER_WEIGHT = 3;
+    private static final int CART_WEIGHT = 1;
+
+    private static final long[] NONE = new long[0];
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final int topK;
+
+    // Изменяются только в update() под монитором
+    private final Long2ObjectOpenHashMap<Long2IntOpenHashMap> matrix = new Long2ObjectOpenHashMap<>();
+    private long lastSeenSeq;
+
+    // Неизменяемый снимок для чтения: товар → соседи по убыванию веса
+    private volatile Long2ObjectOpenHashMap<long[]> related = new Long2ObjectOpenHashMap<>();
+
+    public CoOccurrenceIndex(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.recommendations.top-k:10}") int topK
+    ) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.topK = topK;
+    }
+
+    public long[] related(long productId) {
+        long[] ids = related.get(productId);
+        return ids != null ? ids : NONE;
+    }
+
+    @Scheduled(fixedDelayString = "${app.recommendations.update-interval:PT30S}")
+    public synchronized void update() {
+        try {
+            tx.executeWithoutResult(status -> collect());
+            pull();
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить рекомендации", e);
+        }
+    }
+
+    // ---------- запись приращений ----------
+
+    private void collect() {
+        List<long[]> state = jdbc.query(
+                "select seq, collected_xid from recommendation_state where id = 1 for update skip locked",
+                (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)});
+        if (state.isEmpty()) {
+            // Проход уже выполняет другой экземпляр
+            return;
+        }
+        long seq = state.get(0)[0] + 1;
+        long collectedXid = state.get(0)[1];
+        // Транзакции меньше xmin завершены: их строки уже видны, новых с такими id не появится
+        long upperXid = jdbc.queryForObject("select pg_snapshot_xmin(pg_current_snapshot())::text::bigint - 1", Long.class);
+        if (upperXid <= collectedXid) {
+            return;
+        }
+
+        Long2ObjectOpenHashMap<Long2IntOpenHashMap> delta = new Long2ObjectOpenHashMap<>();
+        collectOrders(collectedXid, upperXid, delta);
+        collectCarts(collectedXid, upperXid, delta);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (Long2ObjectMap.Entry<Long2IntOpenHashMap> row : delta.long2ObjectEntrySet()) {
+            for (Long2IntMap.Entry cell : row.getValue().long2IntEntrySet()) {
+                rows.add(new Object[]{row.getLongKey(), cell.getLongKey(), cell.getIntValue(), seq});
+            }
+        }
+        jdbc.batchUpdate("""
+                insert into product_pairs (product_id, related_id, weight, updated_seq) values (?, ?, ?, ?)
+                on conflict (product_id, related_id)
+                do update set weight = product_pairs.weight + excluded.weight, updated_seq = excluded.updated_seq
+                """, rows);
+        jdbc.update("update recommendation_state set seq = ?, collected_xid = ? where id = 1", seq, upperXid);
+    }
+
+    // Пары товаров внутри каждого нового заказа (позиции заказа вставляет одна транзакция)
+    private void collectOrders(long collectedXid, long upperXid, Long2ObjectOpenHashMap<Long2IntOpenHashMap> delta) {
+        long[] currentOrder = {-1};
+        LongArrayList products = new LongArrayList();
+
+        jdbc.query("select order_id, product_id from order_items where created_xid > ? and created_xid <= ? order by order_id",
+                rs -> {
+                    long orderId = rs.getLong(1);
+                    if (orderId != currentOrder[0]) {
+                        addClique(products, ORDER_WEIGHT, delta);
+                        products.clear();
+                        currentOrder[0] = orderId;
+                    }
+                    products.add(rs.getLong(2));
+                },
+                collectedXid, upperXid);
+        addClique(products, ORDER_WEIGHT, delta);
+    }
+
+    // Новая позиция корзины в паре с остальными товарами той же корзины
+    private void collectCarts(long collectedXid, long upperXid, Long2ObjectOpenHashMap<Long2IntOpenHashMap> delta) {
+        jdbc.query("""
+                        select n.id, n.created_xid, n.product_id, o.id, o.created_xid, o.product_id
+                        from cart_items n
+                        join cart_items o on o.user_id = n.user_id and o.product_id <> n.product_id
+                        where n.created_xid > ? and n.created_xid <= ?
+                        """,
+                rs -> {
+                    long id = rs.getLong(1);
+                    long xid = rs.getLong(2);
+                    long otherId = rs.getLong(4);
+                    // У строк, учтённых до перехода на created_xid, он пустой (0) — они старые
+                    long otherXid = rs.getLong(5);
+                    // Позиции после upperXid учтутся в следующем проходе (тогда эта будет старой),
+                    // пару двух новых позиций учитываем один раз — от более поздней
+                    if (otherXid > upperXid
+                            || (otherXid > collectedXid && (otherXid > xid || (otherXid == xid && otherId > id)))) {
+                        return;
+                    }
+                    addPair(rs.getLong(3), rs.getLong(6), CART_WEIGHT, delta);
+                },
+                collectedXid, upperXid);
+    }
+
+    private static void addClique(LongArrayList products, int weight,
+                                  Long2ObjectOpenHashMap<Long2IntOpenHashMap> delta) {
+        if (products.size() < 2) {
+            return;
+        }
+        LongOpenHashSet distinct = new LongOpenHashSet(products);
+        long[] ids = distinct.toLongArray();
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = i + 1; j < ids.length; j++) {
+                addPair(ids[i], ids[j], weight, delta);
+            }
+        }
+    }
+
+    private static void addPair(long a, long b, int weight, Long2ObjectOpenHashMap<Long2IntOpenHashMap> delta) {
+        row(delta, a).addTo(b, weight);
+        row(delta, b).addTo(a, weight);
+    }
+
+    private static Long2IntOpenHashMap row(Long2ObjectOpenHashMap<Long2IntOpenHashMap> m, long productId) {
+        Long2IntOpenHashMap row = m.get(productId);
+        if (row == null) {
+            row = new Long2IntOpenHashMap();
+            m.put(productId, row);
+        }
+        return row;
+    }
+
+    // ---------- чтение изменений в память ----------
+
+    private void pull() {
+        LongOpenHashSet touched = new LongOpenHashSet();
+        long[] maxSeq = {lastSeenSeq};
+        jdbc.query("select product_id, related_id, weight, updated_seq from product_pairs where updated_seq > ?",
+                rs -> {
+                    long productId = rs.getLong(1);
+                    // Вес в таблице абсолютный, поэтому повторное чтение безопасно
+                    row(matrix, productId).put(rs.getLong(2), rs.getInt(3));
+                    touched.add(productId);
+                    maxSeq[0] = Math.max(maxSeq[0], rs.getLong(4));
+                },
+                lastSeenSeq);
+        lastSeenSeq = maxSeq[0];
+        if (touched.isEmpty()) {
+            return;
+        }
+
+        Long2ObjectOpenHashMap<long[]> next = related.clone();
+        for (LongIterator it = touched.iterator(); it.hasNext(); ) {
+            long productId = it.nextLong();
+            next.put(productId, top(matrix.get(productId)));
+        }
+        related = next;
+    }
+
+    // Соседи с наибольшим весом, вставкой в массив из topK элементов
+    private long[] top(Long2IntOpenHashMap row) {
+        long[] ids = new long[Math.min(topK, row.size())];
+        int[] weights = new int[ids.length];
+        int size = 0;
+        for (Long2IntMap.Entry cell : row.long2IntEntrySet()) {
+            int w = cell.getIntValue();
+            if (size == ids.length && w <= weights[size - 1]) {
+                continue;
+            }
+            int pos = size < ids.length ? size++ : size - 1;
+            while (pos > 0 && weights[pos - 1] < w) {
+                ids[pos] = ids[pos - 1];
+                weights[pos] = weights[pos - 1];
+                pos--;
+            }
+            ids[pos] = cell.getLongKey();
+            weights[pos] = w;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.shop.recommendation;
+
+import com.example.shop.product.ProductRepository;
+import com.example.shop.product.ProductSummary;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/products")
+@CrossOrigin(origins = "*", allowCredentials = "false")
+public class RelatedProductsController {
+
+    private final CoOccurrenceIndex index;
+    private final ProductRepository products;
+
+    public RelatedProductsController(CoOccurrenceIndex index, ProductRepository products) {
+        this.index = index;
+        this.products = products;
+    }
+
+    /**
+     * «С этим товаром покупают»: соседи из заранее посчитанного индекса, по убыванию силы связи.
+     */
+    @GetMapping("/{id}/related")
+    @Transactional(readOnly = true)
+    public List<ProductSummary> related(@PathVariable Long id, @RequestParam(defaultValue = "6") int limit) {
+        long[] ids = index.related(id);
+        int n = Math.min(ids.length, Math.max(limit, 0));
+        if (n == 0) {
+            return List.of();
+        }
+
+        Map<Long, Integer> rank = new HashMap<>();
+        List<Long> wanted = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            rank.put(ids[i], i);
+            wanted.add(ids[i]);
+        }
+        // Удалённые товары просто не найдутся
+        return products.findSummariesByIdIn(wanted).stream()
+                .sorted(Comparator.comparingInt(p -> rank.get(p.id())))
+                .toList();
+    }
+}
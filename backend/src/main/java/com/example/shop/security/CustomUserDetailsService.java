@@ -1,34 +1,59 @@
 package com.example.shop.security;
 
+import com.example.shop.config.SingleFlight;
 import com.example.shop.user.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository users;
-
-    public CustomUserDetailsService(UserRepository users) {
+    private final TransactionTemplate tx;
+    // Одновременные запросы одного пользователя (всплеск с одним JWT) — один findByUsername
+    private final SingleFlight<String, Optional<Account>> accountLoads;
+
+    public CustomUserDetailsService(
+            UserRepository users,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
         this.users = users;
+        // Только что зарегистрированный пользователь может ещё не доехать до реплики,
+        // поэтому аутентификация всегда читает с основной БД (в основном из кэша)
+        this.tx = new TransactionTemplate(transactionManager);
+        this.accountLoads = new SingleFlight<>("user-by-username", meterRegistry);
     }
 
+    // Общий для склеенных запросов неизменяемый снимок; UserDetails у каждого свой,
+    // потому что после входа Spring Security затирает в нём пароль
+    private record Account(String username, String password, Set<GrantedAuthority> authorities) { }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        var user = users.findByUsername(username)
+        Account account = accountLoads.load(username, () -> tx.execute(status -> users.findByUsername(username)
+                        .map(user -> new Account(
+                                user.getUsername(),
+                                user.getPassword(),
+                                user.getRoles().stream()
+                                        .map(SimpleGrantedAuthority::new)
+                                        .collect(Collectors.toUnmodifiableSet())
+                        ))))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-        var authorities = user.getRoles().stream()
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toSet());
-
         return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
-                authorities
+                account.username(),
+                account.password(),
+                account.authorities()
         );
     }
 }
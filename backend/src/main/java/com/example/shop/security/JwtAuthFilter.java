@@ -1,6 +1,8 @@
 package com.example.shop.security;
 
 import com.example.shop.auth.JwtService;
+import com.example.shop.auth.TokenRevocationList;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.*;
@@ -17,10 +19,16 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final TokenRevocationList revocations;
 
-    public JwtAuthFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthFilter(
+            JwtService jwtService,
+            UserDetailsService userDetailsService,
+            TokenRevocationList revocations
+    ) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.revocations = revocations;
     }
 
     @Override
@@ -34,9 +42,12 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token   = authHeader.substring(7);
             try {
-                String username = jwtService.extractUsername(token);
+                Claims claims = jwtService.parse(token);
+                String username = claims.getSubject();
 
-                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null
+                        // почти всегда отвечает фильтр Блума в памяти, без похода в БД
+                        && !revocations.isRevoked(claims.getId())) {
                     var userDetails = userDetailsService.loadUserByUsername(username);
                     var authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
@@ -0,0 +1,22 @@
+-- Исходящие события для внешних систем (склад, почта, бухгалтерия).
+-- Строка пишется в той же транзакции, что и заказ, и отправляется позже фоновым relay
+-- (см. OutboxRelay): оформление не ждёт внешние системы, а событие не теряется и не
+-- появляется без заказа. id — ключ идемпотентности для получателя.
+create table outbox_events (
+    id              bigint generated always as identity primary key,
+    event_type      varchar(64)                 not null,
+    aggregate_id    bigint                      not null,
+    payload         jsonb                       not null,
+    created_at      timestamp(6) with time zone not null default now(),
+    attempts        integer                     not null default 0,
+    -- до этого времени неудачная отправка не повторяется (экспоненциальная пауза)
+    next_attempt_at timestamp(6) with time zone not null default now(),
+    delivered_at    timestamp(6) with time zone,
+    last_error      text
+);
+
+-- Очередь: только неотправленные, в порядке появления
+create index idx_outbox_events_pending on outbox_events (id) where delivered_at is null;
+
+-- Очистка отправленных старше срока хранения
+create index idx_outbox_events_delivered_at on outbox_events (delivered_at) where delivered_at is not null;
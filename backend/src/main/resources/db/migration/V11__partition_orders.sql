@@ -0,0 +1,58 @@
+-- Заказы по месяцам created_at (секционирование по диапазону, границы — полночь UTC первого числа).
+-- Горячая таблица — это только секции за последние месяцы: старые секции OrderArchiver
+-- выгружает в сжатые файлы и отсоединяет, а история заказов дочитывается из архива (OrderArchive).
+-- Новые месяцы заранее создаёт OrderPartitions; orders_default — страховка на случай,
+-- если секции месяца почему-то нет: заказ всё равно сохранится.
+
+alter table orders rename to orders_legacy;
+alter table orders_legacy rename constraint orders_pkey to orders_legacy_pkey;
+alter sequence orders_id_seq rename to orders_legacy_id_seq;
+drop index if exists idx_orders_user_created;
+drop index if exists idx_orders_created_at;
+
+-- Ключ секционирования обязан входить в первичный ключ, поэтому ключ составной;
+-- order_items ссылается на заказ по одному id и теряет внешний ключ (позиции архивируются вместе с заказом)
+alter table order_items drop constraint fk_order_items_order;
+
+create table orders (
+    id          bigint generated by default as identity,
+    user_id     bigint not null references users (id),
+    created_at  timestamp(6) with time zone not null,
+    total_price numeric(38, 2),
+    status      varchar(255),
+    primary key (id, created_at)
+) partition by range (created_at);
+
+create table orders_default partition of orders default;
+
+-- Секции от месяца самого старого заказа до трёх месяцев вперёд
+do $$
+declare
+    month date := coalesce(
+        (select date_trunc('month', min(created_at) at time zone 'UTC') from orders_legacy),
+        date_trunc('month', now() at time zone 'UTC'))::date;
+    last_month date := (date_trunc('month', now() at time zone 'UTC') + interval '3 months')::date;
+begin
+    while month <= last_month loop
+        execute format(
+            'create table %I partition of orders for values from (%L) to (%L)',
+            'orders_' || to_char(month, 'YYYY_MM'),
+            month::timestamp at time zone 'UTC',
+            (month + interval '1 month')::timestamp at time zone 'UTC');
+        month := (month + interval '1 month')::date;
+    end loop;
+end
+$$;
+
+-- Заказы без даты (до приложения её всегда ставит) уходят в orders_default и не архивируются
+insert into orders (id, user_id, created_at, total_price, status)
+select id, user_id, coalesce(created_at, 'epoch'), total_price, status
+from orders_legacy;
+
+select setval(pg_get_serial_sequence('orders', 'id'), coalesce((select max(id) from orders), 0) + 1, false);
+
+drop table orders_legacy;
+
+-- Те же индексы, что в V2; создаются в каждой секции
+create index idx_orders_user_created on orders (user_id, created_at);
+create index idx_orders_created_at on orders (created_at);
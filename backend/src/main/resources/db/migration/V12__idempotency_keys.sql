@@ -0,0 +1,25 @@
+-- Ключи Idempotency-Key для POST /api/orders (см. IdempotencyStore).
+-- Общие для всех экземпляров и переживают рестарт: повтор, попавший на другой узел,
+-- получает сохранённый ответ, а не второй заказ. Строка вставляется до выполнения запроса
+-- (первичный ключ не даёт двум узлам выполнить один ключ), а ответ успешного оформления
+-- записывается в той же транзакции, что и заказ.
+create table idempotency_keys (
+    owner            varchar(255)                not null,
+    idem_key         varchar(255)                not null,
+    fingerprint      text                        not null,
+    -- IN_PROGRESS — запрос выполняется, DONE — ответ сохранён
+    status           varchar(16)                 not null,
+    -- кто выполняет запрос (случайный id захвата) и до какого момента;
+    -- после locked_until выполнявший узел считается упавшим и ключ может взять другой
+    claimed_by       uuid                        not null,
+    locked_until     timestamp(6) with time zone not null,
+    response_status  integer,
+    response_headers jsonb,
+    -- тело ответа: JSON или простая строка (response_json = false)
+    response_body    text,
+    response_json    boolean,
+    expires_at       timestamp(6) with time zone not null,
+    primary key (owner, idem_key)
+);
+
+create index idx_idempotency_keys_expires_at on idempotency_keys (expires_at);
@@ -0,0 +1,44 @@
+-- Версия изменения товара — id транзакции, которая его изменила (xid8), вместо счётчика
+-- в catalog_version. Счётчик — одна строка, и её блокировка держалась до коммита каждой
+-- транзакции, меняющей товар, в том числе каждого оформления заказа (списание остатков):
+-- оформления выстраивались в очередь. Номер из последовательности (nextval) блокировки
+-- не требует, но выдаётся не в порядке коммитов, и клиент мог бы проскочить изменение,
+-- которое закоммитят позже. id транзакции тоже берётся без блокировок, а порядок коммитов
+-- восстанавливается по снимку: все транзакции с id меньше pg_snapshot_xmin уже завершены,
+-- поэтому текущая версия каталога — pg_snapshot_xmin(pg_current_snapshot()) - 1
+-- (см. ProductTombstoneRepository.currentVersion).
+--
+-- У всех изменений одной транзакции одна версия. К id транзакции прибавляется xid_offset:
+-- новые версии должны быть больше любой, выданной счётчиком раньше.
+
+alter table catalog_version add column xid_offset bigint not null default 0;
+update catalog_version set xid_offset = greatest(0, value - pg_current_xact_id()::text::bigint + 1);
+alter table catalog_version drop column value;
+
+create or replace function products_bump_change_version() returns trigger
+    language plpgsql as
+$$
+begin
+    new.change_version := pg_current_xact_id()::text::bigint + (select xid_offset from catalog_version where id = 1);
+    return new;
+end
+$$;
+
+create or replace function products_record_tombstone() returns trigger
+    language plpgsql as
+$$
+begin
+    insert into product_tombstones (product_id, change_version, deleted_at)
+    values (old.id, pg_current_xact_id()::text::bigint + (select xid_offset from catalog_version where id = 1), now())
+    on conflict (product_id) do update set change_version = excluded.change_version,
+                                           deleted_at = excluded.deleted_at;
+    return old;
+end
+$$;
+
+-- Всё, что уже есть, получает версию этой миграции (её проставит триггер), а история до неё
+-- считается неполной: клиенты с версией, выданной до миграции, один раз получат reset.
+update products set change_version = 0;
+update product_tombstones
+set change_version = pg_current_xact_id()::text::bigint + (select xid_offset from catalog_version where id = 1);
+update catalog_version set pruned_version = pg_current_xact_id()::text::bigint + xid_offset;
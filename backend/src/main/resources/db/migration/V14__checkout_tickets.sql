@@ -0,0 +1,22 @@
+-- Заявки пакетного оформления (см. CheckoutBatcher). Ответ 202 с Location на заявку хранится
+-- в idempotency_keys и повторяется любым экземпляром, поэтому и статус заявки должен быть
+-- виден с любого экземпляра и после рестарта. Строка вставляется при постановке в очередь,
+-- а итог записывается той же транзакцией, что оформляет пачку.
+create table checkout_tickets (
+    id             varchar(64)                 primary key,
+    username       varchar(255)                not null,
+    -- PENDING, COMPLETED, REJECTED, FAILED (CheckoutTicket.Status)
+    status         varchar(16)                 not null,
+    order_id       bigint,
+    total_price    numeric(38, 2),
+    message        text,
+    rejected_lines jsonb                       not null default '[]',
+    created_at     timestamp(6) with time zone not null default now(),
+    completed_at   timestamp(6) with time zone
+);
+
+-- Очистка завершённых заявок
+create index idx_checkout_tickets_completed_at on checkout_tickets (completed_at) where completed_at is not null;
+
+-- Заявки, потерянные упавшим экземпляром (очередь в памяти)
+create index idx_checkout_tickets_pending on checkout_tickets (created_at) where status = 'PENDING';
@@ -0,0 +1,26 @@
+-- Отметка «до каких строк учтены пары» по id транзакции вместо id строки (см. CoOccurrenceIndex).
+-- id из identity выдаётся при вставке, а не при коммите: транзакция оформления с меньшим id
+-- могла закоммититься после того, как проход уже учёл строку с большим id и сдвинул отметку,
+-- и её позиции не попадали в матрицу никогда. Теперь у строки есть id вставившей её
+-- транзакции, а проход берёт только транзакции меньше pg_snapshot_xmin — все они уже
+-- завершены, и ни одна из них не закоммитится позже.
+
+-- Столбец без значения по умолчанию добавляется без перезаписи таблицы, default — для новых строк
+alter table order_items add column created_xid bigint;
+alter table order_items alter column created_xid set default pg_current_xact_id()::text::bigint;
+alter table cart_items add column created_xid bigint;
+alter table cart_items alter column created_xid set default pg_current_xact_id()::text::bigint;
+
+-- Ещё не учтённые строки получают id транзакции миграции и попадут в ближайший проход;
+-- у учтённых created_xid остаётся пустым
+update order_items set created_xid = pg_current_xact_id()::text::bigint
+where id > (select last_order_item_id from recommendation_state where id = 1);
+update cart_items set created_xid = pg_current_xact_id()::text::bigint
+where id > (select last_cart_item_id from recommendation_state where id = 1);
+
+create index idx_order_items_created_xid on order_items (created_xid);
+create index idx_cart_items_created_xid on cart_items (created_xid);
+
+alter table recommendation_state add column collected_xid bigint not null default 0;
+update recommendation_state set collected_xid = pg_current_xact_id()::text::bigint - 1;
+alter table recommendation_state drop column last_order_item_id, drop column last_cart_item_id;
@@ -0,0 +1,8 @@
+-- Уведомления шины (V9) теперь и о новых товарах: по ним каждый экземпляр рассылает изменения
+-- подписчикам /api/products/stream (см. ProductEventStream), в том числе сделанные на других
+-- экземплярах. Кэшу лишнее уведомление о вставке безвредно.
+drop trigger products_notify_cache on products;
+
+create trigger products_notify_cache
+    after insert or update or delete on products
+    for each row execute function notify_cache_invalidation('p', 'id');
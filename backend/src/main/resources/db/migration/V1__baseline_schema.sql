@@ -0,0 +1,41 @@
+-- Схема, которую раньше создавал Hibernate (ddl-auto: update).
+-- IF NOT EXISTS — чтобы миграция спокойно проходила и на уже существующих базах.
+
+create table if not exists users (
+    id       bigint generated by default as identity primary key,
+    username varchar(255) not null,
+    password varchar(255) not null,
+    constraint uk_users_username unique (username)
+);
+
+create table if not exists user_roles (
+    user_id bigint not null references users (id),
+    role    varchar(255)
+);
+
+create table if not exists products (
+    id          bigint generated by default as identity primary key,
+    name        varchar(63)    not null,
+    description varchar(2000),
+    price       numeric(15, 2) not null,
+    image_url   varchar(255),
+    stock       integer
+);
+
+create table if not exists cart_items (
+    id         bigint generated by default as identity primary key,
+    user_id    bigint  not null references users (id),
+    product_id bigint  not null references products (id),
+    quantity   integer not null,
+    -- Этот же индекс обслуживает findByUser (user_id — первая колонка)
+    -- и findByUserAndProductId
+    constraint uk_cart_items_user_product unique (user_id, product_id)
+);
+
+create table if not exists orders (
+    id          bigint generated by default as identity primary key,
+    user_id     bigint not null references users (id),
+    created_at  timestamp(6) with time zone,
+    total_price numeric(38, 2),
+    status      varchar(255)
+);
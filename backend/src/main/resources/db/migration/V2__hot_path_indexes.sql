@@ -0,0 +1,14 @@
+-- Индексы под запросы репозиториев на горячих путях.
+-- Уникальные индексы users(username) и cart_items(user_id, product_id) создаются в V1.
+
+-- OrderRepository.findByUser и история заказов пользователя по времени
+create index if not exists idx_orders_user_created on orders (user_id, created_at);
+
+-- Отчёты и выборки заказов за период
+create index if not exists idx_orders_created_at on orders (created_at);
+
+-- Роли подгружаются вместе с пользователем на каждом запросе
+create index if not exists idx_user_roles_user_id on user_roles (user_id);
+
+-- Удаление товара проверяет ссылки из корзин
+create index if not exists idx_cart_items_product_id on cart_items (product_id);
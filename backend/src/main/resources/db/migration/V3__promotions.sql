@@ -0,0 +1,20 @@
+alter table products add column if not exists category varchar(63);
+
+create table promotions (
+    id           bigint generated by default as identity primary key,
+    name         varchar(127) not null,
+    type         varchar(31)  not null,
+    active       boolean      not null default true,
+    product_id   bigint,
+    category     varchar(63),
+    coupon_code  varchar(63),
+    percent      numeric(5, 2),
+    buy_qty      integer,
+    pay_qty      integer,
+    min_subtotal numeric(15, 2),
+    starts_at    timestamp(6) with time zone,
+    ends_at      timestamp(6) with time zone
+);
+
+-- Движок цен загружает только активные правила
+create index idx_promotions_active on promotions (active);
@@ -0,0 +1,61 @@
+-- Версия изменений каталога для дельта-синхронизации (GET /api/products/changes).
+-- Счётчик — одна строка: триггер увеличивает его в транзакции, меняющей товар,
+-- и держит блокировку строки до коммита. Поэтому версии видны в порядке коммитов:
+-- если клиент увидел версию N, все изменения с версией <= N уже закоммичены.
+create table catalog_version (
+    id             smallint primary key check (id = 1),
+    value          bigint not null,
+    -- до этой версии надгробия удалены, клиенту с since ниже нужна полная синхронизация
+    pruned_version bigint not null default 0
+);
+
+alter table products add column if not exists change_version bigint not null default 0;
+
+with numbered as (select id, row_number() over (order by id) as rn from products)
+update products p set change_version = numbered.rn from numbered where p.id = numbered.id;
+
+insert into catalog_version (id, value) values (1, (select count(*) from products));
+
+create index idx_products_change_version on products (change_version);
+
+-- Удалённые товары
+create table product_tombstones (
+    product_id     bigint primary key,
+    change_version bigint not null,
+    deleted_at     timestamp(6) with time zone not null
+);
+
+create index idx_product_tombstones_change_version on product_tombstones (change_version);
+create index idx_product_tombstones_deleted_at on product_tombstones (deleted_at);
+
+create function products_bump_change_version() returns trigger
+    language plpgsql as
+$$
+begin
+    update catalog_version set value = value + 1 where id = 1 returning value into new.change_version;
+    return new;
+end
+$$;
+
+create trigger products_change_version
+    before insert or update on products
+    for each row execute function products_bump_change_version();
+
+create function products_record_tombstone() returns trigger
+    language plpgsql as
+$$
+declare
+    v bigint;
+begin
+    update catalog_version set value = value + 1 where id = 1 returning value into v;
+    insert into product_tombstones (product_id, change_version, deleted_at)
+    values (old.id, v, now())
+    on conflict (product_id) do update set change_version = excluded.change_version,
+                                           deleted_at = excluded.deleted_at;
+    return old;
+end
+$$;
+
+create trigger products_tombstone
+    after delete on products
+    for each row execute function products_record_tombstone();
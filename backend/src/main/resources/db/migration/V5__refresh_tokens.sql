@@ -0,0 +1,27 @@
+-- Refresh-токены: храним только SHA-256 от токена. family_id объединяет цепочку ротаций,
+-- повторное использование уже обменянного токена отзывает всю цепочку.
+create table refresh_tokens (
+    id          bigint generated by default as identity primary key,
+    user_id     bigint       not null,
+    token_hash  varchar(64)  not null,
+    family_id   varchar(36)  not null,
+    -- jti access-токена, выданного вместе с этим refresh-токеном
+    access_jti  varchar(36)  not null,
+    created_at  timestamp(6) with time zone not null,
+    expires_at  timestamp(6) with time zone not null,
+    used_at     timestamp(6) with time zone,
+    revoked_at  timestamp(6) with time zone,
+    constraint uk_refresh_tokens_token_hash unique (token_hash),
+    constraint fk_refresh_tokens_user foreign key (user_id) references users (id)
+);
+
+create index idx_refresh_tokens_family_id on refresh_tokens (family_id);
+create index idx_refresh_tokens_expires_at on refresh_tokens (expires_at);
+
+-- Отозванные access-токены до истечения их срока
+create table revoked_tokens (
+    jti        varchar(36) primary key,
+    expires_at timestamp(6) with time zone not null
+);
+
+create index idx_revoked_tokens_expires_at on revoked_tokens (expires_at);
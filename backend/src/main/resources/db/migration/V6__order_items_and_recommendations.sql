@@ -0,0 +1,35 @@
+-- Позиции заказов. product_id без внешнего ключа: удаление товара не должно трогать историю заказов.
+create table order_items (
+    id         bigint generated by default as identity primary key,
+    order_id   bigint        not null,
+    product_id bigint        not null,
+    quantity   integer       not null,
+    -- цена за штуку на момент заказа (без скидок)
+    price      numeric(15, 2) not null,
+    constraint fk_order_items_order foreign key (order_id) references orders (id)
+);
+
+create index idx_order_items_order_id on order_items (order_id);
+
+-- Разреженная матрица совместных покупок: обе пары (a, b) и (b, a).
+-- updated_seq — номер прохода, изменившего вес; экземпляры приложения дочитывают изменения по нему.
+create table product_pairs (
+    product_id  bigint  not null,
+    related_id  bigint  not null,
+    weight      integer not null,
+    updated_seq bigint  not null,
+    primary key (product_id, related_id)
+);
+
+create index idx_product_pairs_updated_seq on product_pairs (updated_seq);
+
+-- До каких строк order_items / cart_items уже учтены пары. Блокировка строки — один пишущий проход.
+create table recommendation_state (
+    id                 smallint primary key check (id = 1),
+    seq                bigint not null,
+    last_order_item_id bigint not null,
+    last_cart_item_id  bigint not null
+);
+
+insert into recommendation_state (id, seq, last_order_item_id, last_cart_item_id)
+values (1, 0, 0, 0);
@@ -0,0 +1,21 @@
+-- Дневные итоги продаж. Строка дня разбита на несколько shard-строк, чтобы параллельные
+-- оформления не выстраивались в очередь за блокировкой одной строки; читаются суммой по shard.
+create table sales_daily (
+    day     date           not null,
+    shard   smallint       not null,
+    orders  integer        not null,
+    units   bigint         not null,
+    -- выручка по итогам заказов, со скидками
+    revenue numeric(19, 2) not null,
+    primary key (day, shard)
+);
+
+-- Дневные итоги по товарам (выручка по цене позиции, без скидок на заказ)
+create table sales_daily_product (
+    day        date           not null,
+    product_id bigint         not null,
+    orders     integer        not null,
+    units      bigint         not null,
+    revenue    numeric(19, 2) not null,
+    primary key (day, product_id)
+);
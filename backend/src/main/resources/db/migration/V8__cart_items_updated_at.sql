@@ -0,0 +1,8 @@
+-- Время последнего изменения позиции корзины: по нему фоновая очистка удаляет брошенные корзины.
+-- now() вычисляется один раз при миграции (без перезаписи таблицы), так что существующие
+-- корзины считаются изменёнными в момент обновления и живут ещё полный срок.
+alter table cart_items
+    add column updated_at timestamp(6) with time zone not null default now();
+
+-- Очистка идёт по старым строкам в порядке (updated_at, id) без полного прохода по таблице
+create index idx_cart_items_updated_at on cart_items (updated_at, id);
@@ -0,0 +1,30 @@
+-- Шина инвалидации кэшей между экземплярами бэкенда (см. InvalidationBus).
+-- Триггеры шлют NOTIFY в канал cache_invalidation: 'p<id>' — товар (цена, остаток, удаление),
+-- 'u<id>' — пользователь или его роли. NOTIFY доставляется только после коммита и только
+-- если транзакция закоммичена; одинаковые сообщения в одной транзакции PostgreSQL склеивает.
+-- Триггеры ловят любую запись, включая пакетное списание остатков и ручную выдачу ролей в SQL.
+create function notify_cache_invalidation() returns trigger
+    language plpgsql as
+$$
+declare
+    -- tg_argv[0] — префикс сущности, tg_argv[1] — колонка с её id
+    changed jsonb := case when tg_op = 'DELETE' then to_jsonb(old) else to_jsonb(new) end;
+begin
+    perform pg_notify('cache_invalidation', tg_argv[0] || (changed ->> tg_argv[1]));
+    return null;
+end
+$$;
+
+-- Новый товар ничей кэш не делает устаревшим
+create trigger products_notify_cache
+    after update or delete on products
+    for each row execute function notify_cache_invalidation('p', 'id');
+
+-- Вставка тоже: другой экземпляр мог закэшировать пустой результат findByUsername
+create trigger users_notify_cache
+    after insert or update or delete on users
+    for each row execute function notify_cache_invalidation('u', 'id');
+
+create trigger user_roles_notify_cache
+    after insert or update or delete on user_roles
+    for each row execute function notify_cache_invalidation('u', 'user_id');
@@ -0,0 +1,137 @@
+package com.example.shop;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Планы запросов горячих путей: база поднимается в контейнере, схема — миграциями Flyway,
+ * таблицы наполняются тестовыми данными, и для каждого запроса репозиториев
+ * EXPLAIN (FORMAT JSON) не должен содержать Seq Scan по горячей таблице.
+ * <p>
+ * Без Docker тест пропускается.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class HotPathQueryPlansTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static JdbcTemplate jdbc;
+    private static Map<String, Object> sample;
+
+    @BeforeAll
+    static void migrateAndSeed() {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+
+        jdbc.update("""
+                insert into users (username, password)
+                select 'explain-' || g || '@example.com', 'x'
+                from generate_series(1, 50000) g
+                """);
+        jdbc.update("insert into user_roles (user_id, role) select id, 'ROLE_USER' from users");
+        // Каждый товар своей транзакцией: версия изменения — id транзакции, и у товаров она должна различаться
+        for (int i = 1; i <= 2000; i++) {
+            jdbc.update("insert into products (name, price, stock) values (?, 100, 1000)", "explain-" + i);
+        }
+        jdbc.update("""
+                insert into cart_items (user_id, product_id, quantity)
+                select u.id, p.id, 1
+                from (select id, row_number() over (order by id) rn from users) u
+                join (select id, row_number() over (order by id) rn from products) p
+                  on p.rn between (u.rn % 1990) + 1 and (u.rn % 1990) + 3
+                """);
+        jdbc.update("""
+                insert into orders (user_id, created_at, total_price, status)
+                select u.id, now() - (g || ' hours')::interval, 100, 'NEW'
+                from users u
+                cross join generate_series(1, 4) g
+                """);
+        jdbc.execute("analyze");
+
+        sample = jdbc.queryForMap("""
+                select u.id as user_id, u.username,
+                       (select product_id from cart_items where user_id = u.id limit 1) as product_id,
+                       (select pg_snapshot_xmin(pg_current_snapshot())::text::bigint - 1 + xid_offset from catalog_version) as latest
+                from users u order by u.id offset 777 limit 1
+                """);
+    }
+
+    // Запросы в том виде, в каком их строит Hibernate для методов репозиториев
+    static Stream<Arguments> hotPaths() {
+        return Stream.of(
+                Arguments.of("UserRepository.findByUsername",
+                        "select u.id, u.password, u.username from users u where u.username = '${username}'"),
+                Arguments.of("User.roles",
+                        "select r.role from user_roles r where r.user_id = ${user_id}"),
+                Arguments.of("CartItemRepository.findByUser",
+                        "select ci.id, ci.product_id, ci.quantity, ci.user_id from cart_items ci where ci.user_id = ${user_id}"),
+                Arguments.of("CartItemRepository.findByUserAndProductId",
+                        "select ci.id, ci.product_id, ci.quantity, ci.user_id from cart_items ci"
+                                + " where ci.user_id = ${user_id} and ci.product_id = ${product_id}"),
+                Arguments.of("OrderRepository.findByUser",
+                        "select o.id, o.created_at, o.status, o.total_price, o.user_id from orders o where o.user_id = ${user_id}"),
+                Arguments.of("ProductRepository.findChanged",
+                        "select p.id from products p where p.change_version > ${latest} - 10 and p.change_version <= ${latest}"
+                                + " order by p.change_version limit 1000"),
+                Arguments.of("ProductTombstoneRepository.findChanged",
+                        "select t.product_id from product_tombstones t where t.change_version > ${latest} - 10"
+                                + " and t.change_version <= ${latest} order by t.change_version limit 1000"),
+                Arguments.of("заказы за период",
+                        "select count(*) from orders o where o.created_at >= now() - interval '30 minutes'")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotPaths")
+    void noSeqScanOnHotTables(String name, String query) throws Exception {
+        for (Map.Entry<String, Object> value : sample.entrySet()) {
+            query = query.replace("${" + value.getKey() + "}", String.valueOf(value.getValue()));
+        }
+        String json = jdbc.queryForObject("explain (format json) " + query, String.class);
+        JsonNode plan = objectMapper.readTree(json).get(0).get("Plan");
+
+        List<String> seqScans = new ArrayList<>();
+        collectSeqScans(plan, seqScans);
+        // Пустые секции orders (месяцы впереди) планировщик честно читает целиком — это бесплатно
+        seqScans.removeIf(relation -> jdbc.queryForObject(
+                "select coalesce((select reltuples from pg_class where relname = ?), 1) <= 0",
+                Boolean.class, relation));
+
+        assertTrue(seqScans.isEmpty(),
+                () -> "Последовательное сканирование " + seqScans + " на горячем пути " + name + ":\n" + plan.toPrettyString());
+    }
+
+    private static void collectSeqScans(JsonNode node, List<String> relations) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            relations.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSeqScans(child, relations);
+        }
+    }
+}
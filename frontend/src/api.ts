@@ -1,4 +1,5 @@
 import axios from 'axios'
+import type { ProductDelta, ProductSummary } from './types'
 
 const API_BASE_URL = import.meta.env.VITE_API_BASE_URL || 'http://localhost:8080/api'
 
@@ -13,3 +14,31 @@ export function setAuthToken (token: string | null) {
     delete api.defaults.headers.common.Authorization
   }
 }
+
+// Живые изменения цен и остатков (SSE). Возвращает функцию отписки.
+// onResync — изменений накопилось слишком много, список нужно перечитать.
+export function subscribeProductChanges (
+  ids: number[] | null,
+  onChange: (deltas: ProductDelta[]) => void,
+  onResync: () => void
+): () => void {
+  const query = ids && ids.length > 0 ? `?ids=${ids.join(',')}` : ''
+  const source = new EventSource(`${API_BASE_URL}/products/stream${query}`)
+  source.addEventListener('products', e => {
+    onChange(JSON.parse((e as MessageEvent<string>).data) as ProductDelta[])
+  })
+  source.addEventListener('resync', () => onResync())
+  return () => source.close()
+}
+
+// Накладывает дельты из SSE-потока на загруженные товары
+export function applyProductDeltas<T extends ProductSummary> (products: T[], deltas: ProductDelta[]): T[] {
+  const byId = new Map(deltas.map(d => [d.id, d]))
+  return products
+    .filter(p => !byId.get(p.id)?.deleted)
+    .map(p => {
+      const d = byId.get(p.id)
+      if (!d) return p
+      return { ...p, price: d.price ?? p.price, stock: d.stock ?? undefined }
+    })
+}
@@ -30,6 +30,26 @@ type AuthContextType = {
 
 const AuthContext = createContext<AuthContextType | undefined>(undefined)
 
+type AuthResponse = {
+  accessToken: string
+  refreshToken: string
+  expiresIn: number
+}
+
+// один обмен refresh-токена на все параллельные запросы: повторный обмен того же
+// токена сервер считает кражей и отзывает сессию
+let refreshing: Promise<AuthResponse> | null = null
+
+function refreshTokens (refreshToken: string): Promise<AuthResponse> {
+  if (!refreshing) {
+    refreshing = api
+      .post<AuthResponse>('/auth/refresh', { refreshToken })
+      .then(res => res.data)
+      .finally(() => { refreshing = null })
+  }
+  return refreshing
+}
+
 export const AuthProvider: React.FC<{ children: React.ReactNode }> = ({ children }) => {
   const [token, setToken] = useState<string | null>(() => localStorage.getItem('token'))
   const [username, setUsername] = useState<string | null>(null)
@@ -47,26 +67,66 @@ export const AuthProvider: React.FC<{ children: React.ReactNode }> = ({ children
     }
   }, [token])
 
-  const handleAuthResponse = (t: string) => {
-    setToken(t)
-    localStorage.setItem('token', t)
+  const handleAuthResponse = (data: AuthResponse) => {
+    // заголовок ставим сразу, не дожидаясь эффекта, чтобы повтор запроса ушёл с новым токеном
+    setAuthToken(data.accessToken)
+    setToken(data.accessToken)
+    localStorage.setItem('token', data.accessToken)
+    localStorage.setItem('refreshToken', data.refreshToken)
+  }
+
+  const clearAuth = () => {
+    setAuthToken(null)
+    setToken(null)
+    localStorage.removeItem('token')
+    localStorage.removeItem('refreshToken')
   }
 
+  // access-токен живёт недолго: при 401/403 один раз обмениваем refresh-токен и повторяем запрос
+  useEffect(() => {
+    const id = api.interceptors.response.use(undefined, async error => {
+      const original = error.config
+      const status = error.response?.status
+      const refreshToken = localStorage.getItem('refreshToken')
+      if (
+        (status === 401 || status === 403) &&
+        refreshToken && original && !original._retried &&
+        !String(original.url ?? '').startsWith('/auth/')
+      ) {
+        original._retried = true
+        try {
+          const data = await refreshTokens(refreshToken)
+          handleAuthResponse(data)
+          original.headers.Authorization = `Bearer ${data.accessToken}`
+          return await api(original)
+        } catch (refreshError) {
+          if ((refreshError as { response?: { status?: number } }).response?.status === 401) {
+            clearAuth()
+          }
+        }
+      }
+      return Promise.reject(error)
+    })
+    return () => api.interceptors.response.eject(id)
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [])
+
   const login = async (username: string, password: string) => {
-    const res = await api.post('/auth/login', { username, password })
-    const t: string = res.data.accessToken
-    handleAuthResponse(t)
+    const res = await api.post<AuthResponse>('/auth/login', { username, password })
+    handleAuthResponse(res.data)
   }
 
   const register = async (username: string, password: string) => {
-    const res = await api.post('/auth/register', { username, password })
-    const t: string = res.data.accessToken
-    handleAuthResponse(t)
+    const res = await api.post<AuthResponse>('/auth/register', { username, password })
+    handleAuthResponse(res.data)
   }
 
   const logout = () => {
-    setToken(null)
-    localStorage.removeItem('token')
+    // отзываем сессию на сервере, локально выходим сразу
+    const refreshToken = localStorage.getItem('refreshToken')
+    const headers = token ? { Authorization: `Bearer ${token}` } : {}
+    void api.post('/auth/logout', { refreshToken }, { headers }).catch(() => {})
+    clearAuth()
   }
 
   const isAdmin = roles.includes('ROLE_ADMIN')
@@ -9,9 +9,11 @@ const emptyProduct: Product = {
   description: '',
   price: 0,
   imageUrl: '',
-  stock: 0
+  stock: 0,
+  category: ''
 }
 const MAX_NAME = 63
+const MAX_CATEGORY = 63
 
 export const AdminProductsPage: React.FC = () => {
   const [products, setProducts] = useState<Product[]>([])
@@ -259,6 +261,14 @@ export const AdminProductsPage: React.FC = () => {
                   max={10000}
                 />
               </div>
+              <div className="col-12 col-md-6">
+                <label className="form-label small">Категория</label>
+                <input
+                  className="form-control form-control-sm"
+                  value={editing.category ?? ''}
+                  onChange={e => setEditing({ ...editing, category: e.target.value.slice(0, MAX_CATEGORY) })}
+                />
+              </div>
               <div className="col-12">
                 <label className="form-label small">Изображение</label>
                 <input
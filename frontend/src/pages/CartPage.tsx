@@ -1,6 +1,6 @@
 import React, { useEffect, useMemo, useState } from 'react'
 import { api } from '../api'
-import type { CartItem } from '../types'
+import type { CartItem, CheckoutTicket, PriceQuote } from '../types'
 import { useToast } from '../ui/ToastContext'
 
 export const CartPage: React.FC = () => {
@@ -10,6 +10,10 @@ export const CartPage: React.FC = () => {
   const [selectedIds, setSelectedIds] = useState<Set<number>>(new Set())
   const [showOrderModal, setShowOrderModal] = useState(false)
   const [placing, setPlacing] = useState(false)
+  // один ключ на попытку оформления: повторная отправка не создаст второй заказ
+  const [orderKey, setOrderKey] = useState('')
+  const [coupon, setCoupon] = useState('')
+  const [quote, setQuote] = useState<PriceQuote | null>(null)
   const { showError, showSuccess, showInfo } = useToast()
 
   const [lastIncrementTs, setLastIncrementTs] = useState<number | null>(null)
@@ -65,6 +69,33 @@ export const CartPage: React.FC = () => {
     [items, selectedIds]
   )
 
+  // итог с учётом акций считает сервер; до ответа показываем сумму без скидок
+  useEffect(() => {
+    if (selectedIds.size === 0) {
+      setQuote(null)
+      return
+    }
+    let cancelled = false
+    const timer = setTimeout(() => {
+      const params = new URLSearchParams({ ids: Array.from(selectedIds).join(',') })
+      if (coupon.trim()) params.set('coupon', coupon.trim())
+      api
+        .get<PriceQuote>(`/cart/quote?${params.toString()}`)
+        .then(res => {
+          if (!cancelled) setQuote(res.data)
+        })
+        .catch(() => {
+          if (!cancelled) setQuote(null)
+        })
+    }, 300)
+    return () => {
+      cancelled = true
+      clearTimeout(timer)
+    }
+  }, [items, selectedIds, coupon])
+
+  const payable = quote ? quote.total : total
+
   const selectedCount = useMemo(
     () =>
       items
@@ -110,6 +141,7 @@ export const CartPage: React.FC = () => {
       showInfo('Выберите хотя бы один товар для оформления заказа')
       return
     }
+    setOrderKey(crypto.randomUUID())
     setShowOrderModal(true)
   }
 
@@ -118,6 +150,14 @@ export const CartPage: React.FC = () => {
     setShowOrderModal(false)
   }
 
+  const waitForCheckout = async (ticketId: string): Promise<CheckoutTicket> => {
+    for (;;) {
+      const res = await api.get<CheckoutTicket>(`/orders/checkout/${ticketId}`)
+      if (res.data.status !== 'PENDING') return res.data
+      await new Promise(resolve => setTimeout(resolve, 300))
+    }
+  }
+
   const placeOrder = async () => {
     if (selectedIds.size === 0) {
       showInfo('Выберите товары для оформления')
@@ -127,9 +167,23 @@ export const CartPage: React.FC = () => {
     setPlacing(true)
     try {
       const ids = Array.from(selectedIds)
-      await api.post('/orders', {
-        cartItemIds: ids
+      const res = await api.post('/orders', {
+        cartItemIds: ids,
+        couponCode: coupon.trim() || null
+      }, {
+        headers: { 'Idempotency-Key': orderKey }
       })
+      if (res.status === 202) {
+        // пакетный режим: заказ оформляется в фоне, ждём результат заявки
+        const ticket = await waitForCheckout(res.data.id)
+        if (ticket.status !== 'COMPLETED') {
+          showError(ticket.message || 'Не удалось оформить заказ')
+          setShowOrderModal(false)
+          await loadCart()
+          return
+        }
+        if (ticket.message) showInfo(ticket.message)
+      }
       showSuccess('Заказ успешно оформлен')
       setShowOrderModal(false)
       setSelectedIds(new Set())
@@ -239,13 +293,27 @@ export const CartPage: React.FC = () => {
           <div className="card">
             <div className="card-body d-flex flex-column flex-md-row justify-content-between align-items-md-center">
               <div className="mb-2 mb-md-0">
+                {quote && quote.discount > 0 && (
+                  <div className="text-muted small">
+                    Без скидок: <s>{quote.subtotal.toFixed(2)} ₽</s>, скидка {quote.discount.toFixed(2)} ₽
+                    {quote.promotions.length > 0 && <> ({quote.promotions.join(', ')})</>}
+                  </div>
+                )}
                 <div>
-                  Итого: <strong>{total.toFixed(2)} ₽</strong>
+                  Итого: <strong>{payable.toFixed(2)} ₽</strong>
                 </div>
                 <div className="text-muted small">
                   Выбрано товаров: {selectedCount}
                 </div>
               </div>
+              <input
+                className="form-control form-control-sm mb-2 mb-md-0 me-md-3 ms-md-auto"
+                style={{ maxWidth: '180px' }}
+                placeholder="Купон"
+                maxLength={63}
+                value={coupon}
+                onChange={e => setCoupon(e.target.value)}
+              />
               <button
                 type="button"
                 className="btn btn-success"
@@ -279,7 +347,7 @@ export const CartPage: React.FC = () => {
                   <p>
                     Оформить заказ на{' '}
                     <strong>{selectedCount}</strong> товар(ов) на сумму{' '}
-                    <strong>{total.toFixed(2)} ₽</strong>?
+                    <strong>{payable.toFixed(2)} ₽</strong>?
                   </p>
                 </div>
                 <div className="modal-footer">
@@ -1,7 +1,7 @@
 import React, { useEffect, useState } from 'react'
-import { useNavigate, useParams } from 'react-router-dom'
-import { api } from '../api'
-import type { Product, CartItem } from '../types'
+import { Link, useNavigate, useParams } from 'react-router-dom'
+import { api, applyProductDeltas, subscribeProductChanges } from '../api'
+import type { Product, ProductSummary, CartItem } from '../types'
 import { useAuth } from '../auth/AuthContext'
 import { useToast } from '../ui/ToastContext'
 
@@ -12,6 +12,7 @@ export const ProductDetailsPage: React.FC = () => {
   const [error, setError] = useState<string | null>(null)
   const [adding, setAdding] = useState(false)
   const [inCart, setInCart] = useState(false)
+  const [related, setRelated] = useState<ProductSummary[]>([])
   const { isAuthenticated } = useAuth()
   const { showError, showSuccess, showInfo } = useToast()
   const navigate = useNavigate()
@@ -35,6 +36,29 @@ export const ProductDetailsPage: React.FC = () => {
     void load()
   }, [id, showError])
 
+  // «с этим товаром покупают» — необязательный блок, ошибки не показываем
+  useEffect(() => {
+    if (!id) return
+    setRelated([])
+    api.get<ProductSummary[]>(`/products/${id}/related`)
+      .then(res => setRelated(res.data))
+      .catch(() => {})
+  }, [id])
+
+  // цена и остаток обновляются на лету
+  useEffect(() => {
+    if (!id) return
+    return subscribeProductChanges(
+      [Number(id)],
+      deltas => setProduct(prev => (prev ? applyProductDeltas([prev], deltas)[0] ?? null : prev)),
+      () => {
+        api.get<Product>(`/products/${id}`)
+          .then(res => setProduct(res.data))
+          .catch(() => {})
+      }
+    )
+  }, [id])
+
   useEffect(() => {
     const checkCart = async () => {
       if (!isAuthenticated || !id) {
@@ -128,6 +152,26 @@ export const ProductDetailsPage: React.FC = () => {
               : 'Добавить в корзину'}
         </button>
       </div>
+      {related.length > 0 && (
+        <div className="col-12 mt-4">
+          <h2 className="h6 mb-3">С этим товаром покупают</h2>
+          <div className="row g-3">
+            {related.map(r => (
+              <div key={r.id} className="col-6 col-md-2">
+                <Link to={`/products/${r.id}`} className="text-decoration-none">
+                  {r.imageUrl ? (
+                    <img src={r.imageUrl} alt={r.name} className="img-fluid rounded mb-1" />
+                  ) : (
+                    <div className="bg-light border rounded mb-1" style={{ height: 80 }} />
+                  )}
+                  <div className="small">{r.name}</div>
+                </Link>
+                <div className="small text-muted">{r.price.toFixed(2)} ₽</div>
+              </div>
+            ))}
+          </div>
+        </div>
+      )}
     </div>
   )
 }
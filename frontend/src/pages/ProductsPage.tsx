@@ -1,12 +1,12 @@
 import React, { useEffect, useState } from 'react'
 import { Link, useNavigate } from 'react-router-dom'
-import { api } from '../api'
-import type { Product, CartItem } from '../types'
+import { api, applyProductDeltas, subscribeProductChanges } from '../api'
+import type { ProductSummary, CartItem } from '../types'
 import { useAuth } from '../auth/AuthContext'
 import { useToast } from '../ui/ToastContext'
 
 export const ProductsPage: React.FC = () => {
-  const [products, setProducts] = useState<Product[]>([])
+  const [products, setProducts] = useState<ProductSummary[]>([])
   const [loading, setLoading] = useState(false)
   const [error, setError] = useState<string | null>(null)
   const [addingId, setAddingId] = useState<number | null>(null)
@@ -21,7 +21,7 @@ export const ProductsPage: React.FC = () => {
       setLoading(true)
       setError(null)
       try {
-        const prodRes = await api.get<Product[]>('/products')
+        const prodRes = await api.get<ProductSummary[]>('/products')
         setProducts(prodRes.data)
       } catch {
         setError('Не удалось загрузить товары')
@@ -48,6 +48,19 @@ export const ProductsPage: React.FC = () => {
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [isAuthenticated])
 
+  // цены и остатки обновляются на лету, без перезагрузки каталога
+  useEffect(() => {
+    return subscribeProductChanges(
+      null,
+      deltas => setProducts(prev => applyProductDeltas(prev, deltas)),
+      () => {
+        api.get<ProductSummary[]>('/products')
+          .then(res => setProducts(res.data))
+          .catch(() => {})
+      }
+    )
+  }, [])
+
 
   const addOrGo = async (productId: number) => {
     if (inCart.has(productId)) {
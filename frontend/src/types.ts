@@ -5,6 +5,17 @@ export type Product = {
   price: number
   imageUrl?: string
   stock?: number
+  category?: string
+}
+
+// Краткая карточка из GET /products (без описания)
+export type ProductSummary = Pick<Product, 'id' | 'name' | 'price' | 'imageUrl' | 'stock'>
+
+export type ProductDelta = {
+  id: number
+  price?: number
+  stock?: number | null
+  deleted?: boolean
 }
 
 export type CartItem = {
@@ -19,3 +30,18 @@ export type Order = {
   totalPrice: number
   status: string
 }
+
+export type CheckoutTicket = {
+  id: string
+  status: 'PENDING' | 'COMPLETED' | 'REJECTED' | 'FAILED'
+  orderId?: number
+  totalPrice?: number
+  message?: string
+}
+
+export type PriceQuote = {
+  subtotal: number
+  discount: number
+  total: number
+  promotions: string[]
+}